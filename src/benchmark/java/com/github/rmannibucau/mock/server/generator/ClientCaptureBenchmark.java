@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.meecrowave.Meecrowave;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end cost of a captured call against an in-process server, {@code none} is the uncaptured baseline.
+ * Entries are converted and dropped (streaming mode with a no-op sink) so the memory stays flat.
+ *
+ * The test endpoints package is excluded from the scanning, its server capture would otherwise be measured too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientCaptureBenchmark {
+    @Param({ "none", "sync", "async" })
+    private String capture;
+
+    @Param({ "0", "1024", "65536" })
+    private int bodySize;
+
+    @Param({ "4", "32" })
+    private int headers;
+
+    private Meecrowave meecrowave;
+    private Client client;
+    private HarClientFeature feature;
+    private WebTarget target;
+
+    @Setup
+    public void setup() {
+        final Meecrowave.Builder builder = new Meecrowave.Builder().randomHttpPort();
+        builder.setScanningPackageExcludes("com.github.rmannibucau.mock.server.generator.endpoint");
+        meecrowave = new Meecrowave(builder).bake();
+
+        client = ClientBuilder.newClient();
+        switch (capture) {
+            case "sync":
+                feature = new HarClientFeature(entry -> {});
+                client.register(feature);
+                break;
+            case "async":
+                feature = new HarClientFeature(entry -> {})
+                        .withAsyncCapture(1, 10_000, AsyncCapture.BackPressure.DROP, 1);
+                client.register(feature);
+                break;
+            default:
+        }
+        target = client.target("http://localhost:" + builder.getHttpPort()).path("benchmark").queryParam("size", bodySize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        if (feature != null) {
+            feature.close();
+        }
+        meecrowave.close();
+    }
+
+    @Benchmark
+    public byte[] call() {
+        return request().get(byte[].class);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public byte[] call8() {
+        return request().get(byte[].class);
+    }
+
+    private Invocation.Builder request() {
+        final Invocation.Builder request = target.request(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+        for (int i = 0; i < headers; i++) {
+            request.header("X-Benchmark-" + i, "value-" + i);
+        }
+        return request;
+    }
+
+    @Path("benchmark")
+    @ApplicationScoped
+    public static class Endpoint {
+        private final ConcurrentMap<Integer, byte[]> bodies = new ConcurrentHashMap<>();
+
+        @GET
+        @Produces(MediaType.APPLICATION_OCTET_STREAM)
+        public byte[] get(@QueryParam("size") final int size) {
+            return bodies.computeIfAbsent(size, key -> {
+                final byte[] body = new byte[key];
+                Arrays.fill(body, (byte) 'a');
+                return body;
+            });
+        }
+    }
+}
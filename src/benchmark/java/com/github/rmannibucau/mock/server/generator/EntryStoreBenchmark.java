@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+/**
+ * Append throughput of the entry collection, the collection is recreated for each iteration
+ * so copy on write cost is measured for a realistic size (what is appended in one second).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class EntryStoreBenchmark {
+    @Param({ "EntryStore", "CopyOnWriteArrayList" })
+    private String implementation;
+
+    private final Har.Entry entry = new Har.Entry();
+
+    private Collection<Har.Entry> entries;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        entries = "EntryStore".equals(implementation) ? new EntryStore() : new CopyOnWriteArrayList<>();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean append1() {
+        return entries.add(entry);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean append8() {
+        return entries.add(entry);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean append32() {
+        return entries.add(entry);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+/**
+ * Cost of the exchange to HAR entry conversion (headers, query string, cookies, small JSON body),
+ * run it with {@code -prof gc} to see the allocations per conversion ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExchangeConverterBenchmark {
+    @Param({ "4", "32" })
+    private int headers;
+
+    @Param({ "0", "8" })
+    private int queryParameters;
+
+    private final ExchangeConverter converter = new ExchangeConverter(null);
+    private Exchange exchange;
+
+    @Setup
+    public void setup() {
+        final StringBuilder uri = new StringBuilder("http://localhost:8080/api/users/1");
+        for (int i = 0; i < queryParameters; i++) {
+            uri.append(i == 0 ? '?' : '&').append("param").append(i).append('=').append("value").append(i);
+        }
+        final Map<String, List<Object>> requestHeaders = new LinkedHashMap<>();
+        final Map<String, List<String>> responseHeaders = new LinkedHashMap<>();
+        for (int i = 0; i < headers; i++) {
+            requestHeaders.put("X-Request-Header-" + i, new ArrayList<>(Collections.singletonList("value-" + i)));
+            responseHeaders.put("X-Response-Header-" + i, new ArrayList<>(Collections.singletonList("v\u00e4lue-" + i)));
+        }
+
+        exchange = new Exchange();
+        exchange.setStartedDateTime(System.currentTimeMillis());
+        exchange.setStartNanos(1);
+        exchange.setSentNanos(2);
+        exchange.setResponseNanos(3);
+        exchange.setEndNanos(4);
+        exchange.setMethod("GET");
+        exchange.setUri(URI.create(uri.toString()));
+        exchange.setRequestHeaders(requestHeaders);
+        exchange.setRequestCookies(Collections.emptyMap());
+        exchange.setStatus(200);
+        exchange.setResponseHeaders(responseHeaders);
+        exchange.setResponseCookies(Collections.emptyMap());
+        exchange.setResponseMediaType(MediaType.APPLICATION_JSON_TYPE);
+        final byte[] body = "{\"id\":1,\"name\":\"user\"}".getBytes(StandardCharsets.UTF_8);
+        exchange.setResponseBody(Body.of(body));
+        exchange.setResponseBodySize(body.length);
+    }
+
+    @Benchmark
+    public Har.Entry convert() {
+        return converter.apply(exchange);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.Writer;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbConfig;
+import javax.json.bind.config.PropertyOrderStrategy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+/**
+ * Cost of a HAR dump, {@code perCall} reproduces the former behavior (a JSON-B instance and a String per dump).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HarWriterBenchmark {
+    @Param({ "1", "100", "10000" })
+    private int entries;
+
+    private final HarWriter pretty = new HarWriter();
+    private final HarWriter compact = new HarWriter(false);
+    private final Writer output = new NullWriter();
+
+    private Har har;
+
+    @Setup
+    public void setup() {
+        har = new Har();
+        har.getLog().setEntries(IntStream.range(0, entries).mapToObj(this::entry).collect(toList()));
+    }
+
+    @Benchmark
+    @SuppressWarnings("try") // Jsonb.close() declares Exception
+    public void perCall() throws Exception {
+        try (final Jsonb jsonb = JsonbBuilder.create(new JsonbConfig()
+                .withFormatting(true)
+                .withPropertyOrderStrategy(PropertyOrderStrategy.LEXICOGRAPHICAL))) {
+            output.write(jsonb.toJson(har));
+        }
+    }
+
+    @Benchmark
+    public void pretty() {
+        pretty.write(output, har);
+    }
+
+    @Benchmark
+    public void compact() {
+        compact.write(output, har);
+    }
+
+    private Har.Entry entry(final int index) {
+        final Har.Header header = new Har.Header();
+        header.setName("Content-Type");
+        header.setValue("application/json");
+
+        final Har.Request request = new Har.Request();
+        request.setMethod("GET");
+        request.setUrl("http://localhost:8080/api/users/" + index);
+        request.setHeaders(Collections.singletonList(header));
+
+        final Har.Content content = new Har.Content();
+        content.setMimeType("application/json");
+        content.setText("{\"id\":" + index + ",\"name\":\"user " + index + "\"}");
+        content.setSize(content.getText().length());
+
+        final Har.Response response = new Har.Response();
+        response.setHeaders(Collections.singletonList(header));
+        response.setContent(content);
+
+        final Har.Entry entry = new Har.Entry();
+        entry.setRequest(request);
+        entry.setResponse(response);
+        entry.setTimings(new Har.Timings());
+        return entry;
+    }
+
+    private static class NullWriter extends Writer {
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+            // no-op
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) {
+            // no-op
+        }
+
+        @Override
+        public void flush() {
+            // no-op
+        }
+
+        @Override
+        public void close() {
+            // no-op
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import com.github.rmannibucau.mock.server.generator.replay.HarMockServer;
+import com.github.rmannibucau.mock.server.generator.replay.IndexedRequestMatcher;
+import com.github.rmannibucau.mock.server.generator.replay.LinearRequestMatcher;
+import com.github.rmannibucau.mock.server.generator.replay.MatchStrictness;
+import com.github.rmannibucau.mock.server.generator.replay.ReplayEntry;
+import com.github.rmannibucau.mock.server.generator.replay.ReplayRequest;
+import com.github.rmannibucau.mock.server.generator.replay.RequestMatcher;
+
+/**
+ * Lookup cost of a recorded request, entries are spread over 100 endpoints with a query parameter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestMatcherBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    private int entries;
+
+    @Param({ "indexed", "linear" })
+    private String matcher;
+
+    private RequestMatcher requestMatcher;
+    private ReplayRequest[] requests;
+
+    @Setup
+    public void setup() {
+        final List<Har.Entry> harEntries = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            final Har.Query query = new Har.Query();
+            query.setName("page");
+            query.setValue(Integer.toString(i / 100));
+
+            final Har.Request request = new Har.Request();
+            request.setMethod(i % 10 == 0 ? "POST" : "GET");
+            request.setUrl("http://localhost:8080/api/resource" + (i % 100) + "?");
+            request.setQueryString(Collections.singletonList(query));
+
+            final Har.Entry entry = new Har.Entry();
+            entry.setRequest(request);
+            entry.setResponse(new Har.Response());
+            harEntries.add(entry);
+        }
+        final Har har = new Har();
+        har.getLog().setEntries(harEntries);
+        final List<ReplayEntry> replayEntries = HarMockServer.toReplayEntries(har);
+        requestMatcher = "indexed".equals(matcher) ?
+                new IndexedRequestMatcher(replayEntries, MatchStrictness.QUERY) :
+                new LinearRequestMatcher(replayEntries, MatchStrictness.QUERY);
+
+        requests = new ReplayRequest[1024];
+        for (int i = 0; i < requests.length; i++) {
+            final int index = ThreadLocalRandom.current().nextInt(entries);
+            requests[i] = new ReplayRequest(
+                    index % 10 == 0 ? "POST" : "GET", "/api/resource" + (index % 100), "page=" + (index / 100), null);
+        }
+    }
+
+    @Benchmark
+    public ReplayEntry match() {
+        return requestMatcher.match(requests[ThreadLocalRandom.current().nextInt(requests.length)]);
+    }
+}
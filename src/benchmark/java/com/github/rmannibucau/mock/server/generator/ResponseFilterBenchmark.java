@@ -0,0 +1,485 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.NewCookie;
+import javax.ws.rs.core.Response;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+/**
+ * Overhead of {@link HarClientFeature.ResponseFilter} on the calling thread, without any network:
+ * the contexts are stubs, the request body is written and the response body read like a client runtime does.
+ * {@code baseline} does the same body work without the filter so the difference is the capture cost.
+ *
+ * {@code raw} only hands the exchange over (what an async or binary capture pays on the request thread),
+ * {@code convert} also converts it to a HAR entry. Run with {@code -prof gc} to get the allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseFilterBenchmark {
+    @State(Scope.Benchmark)
+    public static class Filters {
+        private HarClientFeature.ResponseFilter raw;
+        private HarClientFeature.ResponseFilter convert;
+        private Har.Entry lastEntry; // keeps the conversion alive
+
+        @Setup
+        public void setup() {
+            raw = new HarClientFeature.ResponseFilter(Exchange::release);
+            final ExchangeConverter converter = new ExchangeConverter(null);
+            convert = new HarClientFeature.ResponseFilter(exchange -> {
+                lastEntry = converter.apply(exchange);
+                exchange.release();
+            });
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Call {
+        @Param({ "0", "1024", "65536" })
+        private int bodySize;
+
+        @Param({ "4", "32" })
+        private int headers;
+
+        private byte[] body;
+        private byte[] readBuffer;
+        private StubRequest request;
+        private StubResponse response;
+
+        @Setup
+        public void setup() {
+            body = new byte[bodySize];
+            for (int i = 0; i < body.length; i++) {
+                body[i] = (byte) ('a' + (i % 26));
+            }
+            readBuffer = new byte[8192];
+            final MultivaluedMap<String, Object> requestHeaders = new MultivaluedHashMap<>();
+            final MultivaluedMap<String, String> responseHeaders = new MultivaluedHashMap<>();
+            for (int i = 0; i < headers; i++) {
+                requestHeaders.putSingle("X-Request-Header-" + i, "value-" + i);
+                responseHeaders.putSingle("X-Response-Header-" + i, "value-" + i);
+            }
+            request = new StubRequest(URI.create("http://localhost:8080/api/users/1?expand=true"), bodySize > 0 ? "POST" : "GET",
+                    requestHeaders, bodySize > 0 ? body : null);
+            response = new StubResponse(responseHeaders);
+        }
+    }
+
+    @Benchmark
+    public void baseline(final Call call, final Blackhole blackhole) throws IOException {
+        blackhole.consume(run(null, call));
+    }
+
+    @Benchmark
+    public void raw(final Filters filters, final Call call, final Blackhole blackhole) throws IOException {
+        blackhole.consume(run(filters.raw, call));
+    }
+
+    @Benchmark
+    public void convert(final Filters filters, final Call call, final Blackhole blackhole) throws IOException {
+        blackhole.consume(run(filters.convert, call));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void raw8(final Filters filters, final Call call, final Blackhole blackhole) throws IOException {
+        blackhole.consume(run(filters.raw, call));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void convert8(final Filters filters, final Call call, final Blackhole blackhole) throws IOException {
+        blackhole.consume(run(filters.convert, call));
+    }
+
+    // request filters, entity serialization, response filters then the application reading the body
+    private static long run(final HarClientFeature.ResponseFilter filter, final Call call) throws IOException {
+        final StubRequest request = call.request;
+        final StubResponse response = call.response;
+        request.reset();
+        response.reset(call.body);
+        if (filter != null) {
+            filter.filter(request);
+        }
+        if (request.hasEntity()) {
+            try (final OutputStream stream = request.getEntityStream()) {
+                stream.write(call.body);
+            }
+        }
+        if (filter != null) {
+            filter.filter(request, response);
+        }
+        long total = 0;
+        try (final InputStream stream = response.getEntityStream()) {
+            int read;
+            while ((read = stream.read(call.readBuffer)) >= 0) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(final int b) {
+            // no-op
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            // no-op
+        }
+    }
+
+    private static class StubRequest implements ClientRequestContext {
+        private final OutputStream network = new NullOutputStream();
+        private final Map<String, Object> properties = new HashMap<>();
+        private final URI uri;
+        private final String method;
+        private final MultivaluedMap<String, Object> headers;
+        private final byte[] entity;
+        private OutputStream entityStream;
+
+        private StubRequest(final URI uri, final String method, final MultivaluedMap<String, Object> headers, final byte[] entity) {
+            this.uri = uri;
+            this.method = method;
+            this.headers = headers;
+            this.entity = entity;
+        }
+
+        private void reset() {
+            properties.clear();
+            entityStream = network;
+        }
+
+        @Override
+        public Object getProperty(final String name) {
+            return properties.get(name);
+        }
+
+        @Override
+        public Collection<String> getPropertyNames() {
+            return properties.keySet();
+        }
+
+        @Override
+        public void setProperty(final String name, final Object object) {
+            properties.put(name, object);
+        }
+
+        @Override
+        public void removeProperty(final String name) {
+            properties.remove(name);
+        }
+
+        @Override
+        public URI getUri() {
+            return uri;
+        }
+
+        @Override
+        public void setUri(final URI uri) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public void setMethod(final String method) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MultivaluedMap<String, Object> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getStringHeaders() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getHeaderString(final String name) {
+            final Object value = headers.getFirst(name);
+            return value == null ? null : String.valueOf(value);
+        }
+
+        @Override
+        public Date getDate() {
+            return null;
+        }
+
+        @Override
+        public Locale getLanguage() {
+            return null;
+        }
+
+        @Override
+        public MediaType getMediaType() {
+            return entity == null ? null : MediaType.APPLICATION_JSON_TYPE;
+        }
+
+        @Override
+        public List<MediaType> getAcceptableMediaTypes() {
+            return Collections.singletonList(MediaType.APPLICATION_JSON_TYPE);
+        }
+
+        @Override
+        public List<Locale> getAcceptableLanguages() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Map<String, Cookie> getCookies() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public boolean hasEntity() {
+            return entity != null;
+        }
+
+        @Override
+        public Object getEntity() {
+            return entity;
+        }
+
+        @Override
+        public Class<?> getEntityClass() {
+            return byte[].class;
+        }
+
+        @Override
+        public Type getEntityType() {
+            return byte[].class;
+        }
+
+        @Override
+        public void setEntity(final Object entity) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setEntity(final Object entity, final Annotation[] annotations, final MediaType mediaType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Annotation[] getEntityAnnotations() {
+            return new Annotation[0];
+        }
+
+        @Override
+        public OutputStream getEntityStream() {
+            return entityStream;
+        }
+
+        @Override
+        public void setEntityStream(final OutputStream outputStream) {
+            this.entityStream = outputStream;
+        }
+
+        @Override
+        public Client getClient() {
+            return null;
+        }
+
+        @Override
+        public Configuration getConfiguration() {
+            return null;
+        }
+
+        @Override
+        public void abortWith(final Response response) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class StubResponse implements ClientResponseContext {
+        private final MultivaluedMap<String, String> headers;
+        private InputStream entityStream;
+        private boolean hasEntity;
+
+        private StubResponse(final MultivaluedMap<String, String> headers) {
+            this.headers = headers;
+        }
+
+        private void reset(final byte[] body) {
+            entityStream = new ByteArrayInputStream(body);
+            hasEntity = body.length > 0;
+        }
+
+        @Override
+        public int getStatus() {
+            return 200;
+        }
+
+        @Override
+        public void setStatus(final int code) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Response.StatusType getStatusInfo() {
+            return Response.Status.OK;
+        }
+
+        @Override
+        public void setStatusInfo(final Response.StatusType statusInfo) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public String getHeaderString(final String name) {
+            return headers.getFirst(name);
+        }
+
+        @Override
+        public Set<String> getAllowedMethods() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public Date getDate() {
+            return null;
+        }
+
+        @Override
+        public Locale getLanguage() {
+            return null;
+        }
+
+        @Override
+        public int getLength() {
+            return -1;
+        }
+
+        @Override
+        public MediaType getMediaType() {
+            return hasEntity ? MediaType.APPLICATION_JSON_TYPE : null;
+        }
+
+        @Override
+        public Map<String, NewCookie> getCookies() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public EntityTag getEntityTag() {
+            return null;
+        }
+
+        @Override
+        public Date getLastModified() {
+            return null;
+        }
+
+        @Override
+        public URI getLocation() {
+            return null;
+        }
+
+        @Override
+        public Set<Link> getLinks() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public boolean hasLink(final String relation) {
+            return false;
+        }
+
+        @Override
+        public Link getLink(final String relation) {
+            return null;
+        }
+
+        @Override
+        public Link.Builder getLinkBuilder(final String relation) {
+            return null;
+        }
+
+        @Override
+        public boolean hasEntity() {
+            return hasEntity;
+        }
+
+        @Override
+        public InputStream getEntityStream() {
+            return entityStream;
+        }
+
+        @Override
+        public void setEntityStream(final InputStream input) {
+            this.entityStream = input;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands exchanges to a bounded queue consumed by background threads so the request thread
+ * only pays the snapshot cost. When the queue is saturated the {@link BackPressure} policy applies.
+ */
+public class AsyncCapture implements Consumer<Exchange>, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(AsyncCapture.class.getName());
+
+    private final BlockingQueue<Exchange> queue;
+    private final BackPressure backPressure;
+    private final int sampleRate;
+    private final int samplingThreshold;
+    private final Consumer<Exchange> processor;
+    private final Thread[] workers;
+    private final AtomicLong sampled = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger producers = new AtomicInteger(); // accept() calls in progress
+    private volatile boolean closed;
+
+    /**
+     * @param threads       number of conversion threads.
+     * @param queueCapacity max number of pending exchanges.
+     * @param backPressure  what to do when the queue is saturated.
+     * @param sampleRate    for {@link BackPressure#SAMPLE}, one exchange out of {@code sampleRate} is kept.
+     * @param processor     the actual (synchronous) processing of an exchange.
+     */
+    public AsyncCapture(final int threads, final int queueCapacity, final BackPressure backPressure,
+                        final int sampleRate, final Consumer<Exchange> processor) {
+        if (threads <= 0 || queueCapacity <= 0 || sampleRate <= 0) {
+            throw new IllegalArgumentException("threads, queueCapacity and sampleRate must be positive");
+        }
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.backPressure = backPressure;
+        this.sampleRate = sampleRate;
+        this.samplingThreshold = queueCapacity / 2;
+        this.processor = processor;
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, "har-capture-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+
+    @Override
+    public void accept(final Exchange exchange) {
+        producers.incrementAndGet(); // before reading closed so close() waits for this exchange
+        try {
+            enqueue(exchange);
+        } finally {
+            producers.decrementAndGet();
+        }
+    }
+
+    private void enqueue(final Exchange exchange) {
+        if (closed) {
+            drop(exchange);
+            return;
+        }
+        switch (backPressure) {
+            case BLOCK:
+                try {
+                    queue.put(exchange);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop(exchange);
+                }
+                break;
+            case SAMPLE:
+                if (queue.size() >= samplingThreshold && sampled.incrementAndGet() % sampleRate != 0) {
+                    drop(exchange);
+                } else {
+                    offer(exchange);
+                }
+                break;
+            case DROP:
+            default:
+                offer(exchange);
+        }
+    }
+
+    private void offer(final Exchange exchange) {
+        if (!queue.offer(exchange)) {
+            drop(exchange);
+        }
+    }
+
+    /**
+     * Stops accepting exchanges and waits for the pending ones to be processed.
+     * Exchanges enqueued while closing are processed by the closing thread once the workers stopped.
+     */
+    @Override
+    public void close() {
+        closed = true; // workers are not interrupted since it would close interruptible channels of the sink
+        for (final Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        while (true) { // draining also unblocks the BLOCK producers which saw the capture open
+            final boolean idle = producers.get() == 0; // later producers see closed and drop their exchange
+            Exchange exchange;
+            while ((exchange = queue.poll()) != null) {
+                process(exchange);
+            }
+            if (idle) {
+                return;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private void drop(final Exchange exchange) {
+        dropped.increment();
+        exchange.release();
+    }
+
+    private void work() {
+        while (true) {
+            final Exchange exchange;
+            try {
+                exchange = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (exchange == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            process(exchange);
+        }
+    }
+
+    private void process(final Exchange exchange) {
+        try {
+            processor.accept(exchange);
+        } catch (final RuntimeException re) {
+            LOGGER.log(Level.SEVERE, re.getMessage(), re);
+        }
+    }
+
+    public enum BackPressure {
+        /**
+         * The request thread waits for some room in the queue.
+         */
+        BLOCK,
+
+        /**
+         * Exchanges are dropped when the queue is full.
+         */
+        DROP,
+
+        /**
+         * Once the queue is half full only one exchange out of {@code sampleRate} is kept,
+         * and exchanges are dropped when it is full.
+         */
+        SAMPLE
+    }
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.NewCookie;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+/**
+ * Reads the records written by {@link BinaryCaptureWriter} and converts them to a standard HAR.
+ * A truncated last record (capture process killed) is ignored.
+ */
+public class BinaryCaptureReader {
+    private static final Logger LOGGER = Logger.getLogger(BinaryCaptureReader.class.getName());
+
+    public Stream<Exchange> exchanges(final Path path) {
+        try {
+            return exchanges(new BufferedInputStream(Files.newInputStream(path), 64 * 1024));
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param stream the binary capture, it is closed with the returned stream.
+     * @return the captured exchanges.
+     */
+    public Stream<Exchange> exchanges(final InputStream stream) {
+        final ExchangeIterator iterator;
+        try {
+            iterator = new ExchangeIterator(stream);
+        } catch (final RuntimeException re) {
+            try {
+                stream.close();
+            } catch (final IOException e) {
+                re.addSuppressed(e);
+            }
+            throw re;
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        stream.close();
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Converts a binary capture to a HAR file.
+     *
+     * @param binary the capture written by a {@link BinaryCaptureWriter}.
+     * @param har    the HAR file to create.
+     * @return the number of converted entries.
+     */
+    public long convert(final Path binary, final Path har) {
+        try (final HarStreamWriter writer = HarStreamWriter.open(har)) {
+            return convert(binary, writer);
+        }
+    }
+
+    /**
+     * Converts a binary capture to HAR entries.
+     *
+     * @param binary the capture written by a {@link BinaryCaptureWriter}.
+     * @param sink   the entry listener, typically a {@link HarStreamWriter}.
+     * @return the number of converted entries.
+     */
+    public long convert(final Path binary, final Consumer<Har.Entry> sink) {
+        final ExchangeConverter converter = new ExchangeConverter(null);
+        final AtomicLong count = new AtomicLong();
+        try (final Stream<Exchange> exchanges = exchanges(binary)) {
+            exchanges.map(converter).forEach(entry -> {
+                sink.accept(entry);
+                count.incrementAndGet();
+            });
+        }
+        return count.get();
+    }
+
+    private static class ExchangeIterator implements Iterator<Exchange> {
+        private final InputStream stream;
+        private final List<String> dictionary = new ArrayList<>();
+        private byte[] record = new byte[8192];
+        private int position;
+        private Exchange next;
+        private boolean done;
+
+        private ExchangeIterator(final InputStream stream) {
+            this.stream = stream;
+            try {
+                final byte[] magic = new byte[BinaryCaptureWriter.MAGIC.length];
+                if (!readFully(magic, magic.length) || !Arrays.equals(magic, BinaryCaptureWriter.MAGIC)) {
+                    throw new IllegalStateException("Not a binary capture");
+                }
+                final int version = stream.read();
+                if (version != BinaryCaptureWriter.VERSION) {
+                    throw new IllegalStateException("Unsupported binary capture version: " + version);
+                }
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (done) {
+                return false;
+            }
+            try {
+                final int length = readRecordLength();
+                if (length < 0) {
+                    done = true;
+                    return false;
+                }
+                if (record.length < length) {
+                    record = new byte[length];
+                }
+                if (!readFully(record, length)) {
+                    LOGGER.warning("Ignoring truncated last record");
+                    done = true;
+                    return false;
+                }
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            position = 0;
+            next = readExchange();
+            return true;
+        }
+
+        @Override
+        public Exchange next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Exchange exchange = next;
+            next = null;
+            return exchange;
+        }
+
+        private Exchange readExchange() {
+            final Exchange exchange = new Exchange();
+            exchange.setStartedDateTime(readLong());
+            exchange.setStartNanos(readLong());
+            exchange.setSentNanos(exchange.getStartNanos() + readSignedVarLong());
+            exchange.setResponseNanos(exchange.getStartNanos() + readSignedVarLong());
+            exchange.setEndNanos(exchange.getStartNanos() + readSignedVarLong());
+
+            exchange.setMethod(readString());
+            final String uri = readString();
+            exchange.setUri(uri == null ? null : URI.create(uri));
+            exchange.setRequestHeaders(readHeaders(Object.class));
+            exchange.setRequestCookies(readCookies(Cookie.class));
+            exchange.setRequestMediaType(readMediaType());
+            exchange.setRequestBody(readBody());
+            if (exchange.getRequestBody() != null) {
+                exchange.setRequestBodySize(readVarLong());
+            }
+
+            exchange.setStatus((int) readVarLong());
+            exchange.setResponseHeaders(readHeaders(String.class));
+            exchange.setResponseCookies(readCookies(NewCookie.class));
+            exchange.setResponseMediaType(readMediaType());
+            exchange.setResponseBody(readBody());
+            if (exchange.getResponseBody() != null) {
+                exchange.setResponseBodySize(readVarLong());
+            }
+            return exchange;
+        }
+
+        // request headers are List<Object> and response ones List<String> in Exchange, values are always written as strings
+        private <T> Map<String, List<T>> readHeaders(final Class<T> valueType) {
+            final int size = (int) readVarLong() - 1;
+            if (size < 0) {
+                return null;
+            }
+            final Map<String, List<T>> headers = new LinkedHashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                final String name = readString();
+                final int valueCount = (int) readVarLong();
+                final List<T> values = new ArrayList<>(valueCount);
+                for (int j = 0; j < valueCount; j++) {
+                    values.add(valueType.cast(readString()));
+                }
+                headers.put(name, values);
+            }
+            return headers;
+        }
+
+        // response cookies are always written as NewCookie
+        private <T extends Cookie> Map<String, T> readCookies(final Class<T> cookieType) {
+            final int size = (int) readVarLong() - 1;
+            if (size < 0) {
+                return null;
+            }
+            final Map<String, T> cookies = new LinkedHashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                final String name = readString();
+                final String value = readString();
+                final String path = readString();
+                final String domain = readString();
+                final int version = (int) readVarLong();
+                final Cookie cookie;
+                if (record[position++] == 1) {
+                    final String comment = readString();
+                    final int maxAge = (int) readSignedVarLong();
+                    final long expiry = readSignedVarLong();
+                    final int flags = record[position++];
+                    cookie = new NewCookie(name, value, path, domain, version, comment, maxAge,
+                            expiry < 0 ? null : new Date(expiry), (flags & 1) != 0, (flags & 2) != 0);
+                } else {
+                    cookie = new Cookie(name, value, path, domain, version);
+                }
+                cookies.put(name, cookieType.cast(cookie));
+            }
+            return cookies;
+        }
+
+        private MediaType readMediaType() {
+            final int parameterCount = (int) readVarLong() - 1;
+            if (parameterCount < 0) {
+                return null;
+            }
+            final String type = readString();
+            final String subtype = readString();
+            if (parameterCount == 0) {
+                return new MediaType(type, subtype);
+            }
+            final Map<String, String> parameters = new LinkedHashMap<>(parameterCount * 4 / 3 + 1);
+            for (int i = 0; i < parameterCount; i++) {
+                parameters.put(readString(), readString());
+            }
+            return new MediaType(type, subtype, parameters);
+        }
+
+        private Body readBody() {
+            final int length = (int) readVarLong() - 1;
+            if (length < 0) {
+                return null;
+            }
+            final byte[] body = Arrays.copyOfRange(record, position, position + length);
+            position += length;
+            return Body.of(body);
+        }
+
+        private String readString() {
+            final int code = (int) readVarLong();
+            switch (code) {
+                case BinaryCaptureWriter.NULL:
+                    return null;
+                case BinaryCaptureWriter.LITERAL:
+                case BinaryCaptureWriter.DEFINITION:
+                    final int length = (int) readVarLong();
+                    final String value = new String(record, position, length, StandardCharsets.UTF_8);
+                    position += length;
+                    if (code == BinaryCaptureWriter.DEFINITION) {
+                        dictionary.add(value);
+                    }
+                    return value;
+                default:
+                    return dictionary.get(code - BinaryCaptureWriter.REFERENCE);
+            }
+        }
+
+        private long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (record[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = record[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private long readSignedVarLong() {
+            final long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        // -1 at the end of the stream
+        private int readRecordLength() throws IOException {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = stream.read();
+                if (b < 0) {
+                    if (shift > 0) {
+                        LOGGER.warning("Ignoring truncated last record");
+                    }
+                    return -1;
+                }
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private boolean readFully(final byte[] buffer, final int length) throws IOException {
+            int read = 0;
+            while (read < length) {
+                final int count = stream.read(buffer, read, length - read);
+                if (count < 0) {
+                    return false;
+                }
+                read += count;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.NewCookie;
+
+/**
+ * Writes raw {@link Exchange} in a compact binary format, it avoids any JSON/Base64 work at capture time.
+ * Use {@link BinaryCaptureReader#convert(Path, Path)} to get a standard HAR from it.
+ *
+ * Format: a {@code HARB} magic and a version byte then one record per exchange,
+ * each record is prefixed by its length (varint). Strings are written as a varint code:
+ * 0 is null, 1 an inline literal, 2 a literal added to the dictionary and other values
+ * a reference to the dictionary entry {@code code - 3}. Literals are a varint length followed by UTF-8 bytes.
+ */
+public class BinaryCaptureWriter implements Consumer<Exchange>, AutoCloseable {
+    static final byte[] MAGIC = { 'H', 'A', 'R', 'B' };
+    static final int VERSION = 1;
+    static final int NULL = 0;
+    static final int LITERAL = 1;
+    static final int DEFINITION = 2;
+    static final int REFERENCE = 3;
+
+    private static final int MAX_INTERNED_LENGTH = 256;
+
+    private final OutputStream output;
+    private final int maxDictionarySize;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final Record record = new Record();
+    private boolean closed;
+
+    public BinaryCaptureWriter(final OutputStream output) {
+        this(output, 65536);
+    }
+
+    /**
+     * @param output            where to write the records.
+     * @param maxDictionarySize max number of interned strings, once reached new strings are written inline.
+     */
+    public BinaryCaptureWriter(final OutputStream output, final int maxDictionarySize) {
+        this.output = output;
+        this.maxDictionarySize = maxDictionarySize;
+        try {
+            output.write(MAGIC);
+            output.write(VERSION);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static BinaryCaptureWriter open(final Path output) {
+        if (output.getParent() != null && !Files.exists(output.getParent())) {
+            try {
+                Files.createDirectories(output.getParent());
+            } catch (final IOException e) {
+                throw new IllegalStateException("Can't create '" + output + "'");
+            }
+        }
+        try {
+            return new BinaryCaptureWriter(new BufferedOutputStream(Files.newOutputStream(output), 64 * 1024));
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void accept(final Exchange exchange) {
+        if (closed) {
+            throw new IllegalStateException("Writer already closed");
+        }
+        record.reset();
+        record.writeLong(exchange.getStartedDateTime());
+        record.writeLong(exchange.getStartNanos());
+        record.writeSignedVarLong(exchange.getSentNanos() - exchange.getStartNanos());
+        record.writeSignedVarLong(exchange.getResponseNanos() - exchange.getStartNanos());
+        record.writeSignedVarLong(exchange.getEndNanos() - exchange.getStartNanos());
+
+        writeString(exchange.getMethod());
+        writeString(exchange.getUri() == null ? null : exchange.getUri().toASCIIString());
+        writeHeaders(exchange.getRequestHeaders());
+        writeCookies(exchange.getRequestCookies());
+        writeMediaType(exchange.getRequestMediaType());
+        writeBody(exchange.getRequestBody(), exchange.getRequestBodySize());
+
+        record.writeVarLong(exchange.getStatus());
+        writeHeaders(exchange.getResponseHeaders());
+        writeCookies(exchange.getResponseCookies());
+        writeMediaType(exchange.getResponseMediaType());
+        writeBody(exchange.getResponseBody(), exchange.getResponseBodySize());
+
+        try {
+            record.writeTo(output);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized void flush() {
+        try {
+            output.flush();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            output.close();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeHeaders(final Map<String, ? extends List<?>> headers) {
+        if (headers == null) {
+            record.writeVarLong(0);
+            return;
+        }
+        record.writeVarLong(headers.size() + 1);
+        for (final Map.Entry<String, ? extends List<?>> header : headers.entrySet()) {
+            writeString(header.getKey());
+            final List<?> values = header.getValue();
+            record.writeVarLong(values.size());
+            for (final Object value : values) {
+                writeString(String.valueOf(value));
+            }
+        }
+    }
+
+    private void writeCookies(final Map<String, ? extends Cookie> cookies) {
+        if (cookies == null) {
+            record.writeVarLong(0);
+            return;
+        }
+        record.writeVarLong(cookies.size() + 1);
+        for (final Cookie cookie : cookies.values()) {
+            writeString(cookie.getName());
+            writeString(cookie.getValue());
+            writeString(cookie.getPath());
+            writeString(cookie.getDomain());
+            record.writeVarLong(cookie.getVersion());
+            if (NewCookie.class.isInstance(cookie)) {
+                final NewCookie newCookie = NewCookie.class.cast(cookie);
+                record.write(1);
+                writeString(newCookie.getComment());
+                record.writeSignedVarLong(newCookie.getMaxAge());
+                record.writeSignedVarLong(newCookie.getExpiry() == null ? -1 : newCookie.getExpiry().getTime());
+                record.write((newCookie.isSecure() ? 1 : 0) | (newCookie.isHttpOnly() ? 2 : 0));
+            } else {
+                record.write(0);
+            }
+        }
+    }
+
+    private void writeMediaType(final MediaType mediaType) {
+        if (mediaType == null) {
+            record.writeVarLong(0);
+            return;
+        }
+        record.writeVarLong(mediaType.getParameters().size() + 1);
+        writeString(mediaType.getType());
+        writeString(mediaType.getSubtype());
+        mediaType.getParameters().forEach((key, value) -> {
+            writeString(key);
+            writeString(value);
+        });
+    }
+
+    private void writeBody(final Body body, final long size) {
+        if (body == null) {
+            record.writeVarLong(0);
+            return;
+        }
+        record.writeVarLong(body.length() + 1L);
+        record.write(body.asByteBuffer());
+        record.writeVarLong(size);
+    }
+
+    private void writeString(final String value) {
+        if (value == null) {
+            record.writeVarLong(NULL);
+            return;
+        }
+        final Integer index = dictionary.get(value);
+        if (index != null) {
+            record.writeVarLong(REFERENCE + index);
+            return;
+        }
+        if (value.length() <= MAX_INTERNED_LENGTH && dictionary.size() < maxDictionarySize) {
+            dictionary.put(value, dictionary.size());
+            record.writeVarLong(DEFINITION);
+        } else {
+            record.writeVarLong(LITERAL);
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        record.writeVarLong(bytes.length);
+        record.write(bytes, 0, bytes.length);
+    }
+
+    // reusable record buffer, it enables to prefix the record by its length
+    private static class Record {
+        private byte[] buffer = new byte[8192];
+        private int length;
+
+        private void reset() {
+            if (buffer.length > 1024 * 1024) { // don't keep a huge buffer after a big body
+                buffer = new byte[8192];
+            }
+            length = 0;
+        }
+
+        private void ensureCapacity(final int additional) {
+            final int required = length + additional;
+            if (required > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+            }
+        }
+
+        private void write(final int b) {
+            ensureCapacity(1);
+            buffer[length++] = (byte) b;
+        }
+
+        private void write(final byte[] bytes, final int off, final int len) {
+            ensureCapacity(len);
+            System.arraycopy(bytes, off, buffer, length, len);
+            length += len;
+        }
+
+        private void write(final ByteBuffer bytes) {
+            final int len = bytes.remaining();
+            ensureCapacity(len);
+            bytes.get(buffer, length, len);
+            length += len;
+        }
+
+        private void writeLong(final long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeVarLong(final long value) {
+            ensureCapacity(10);
+            long remaining = value;
+            while ((remaining & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            buffer[length++] = (byte) remaining;
+        }
+
+        private void writeSignedVarLong(final long value) { // zigzag
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        private void writeTo(final OutputStream output) throws IOException {
+            final byte[] prefix = new byte[5];
+            int prefixLength = 0;
+            int remaining = length;
+            while ((remaining & ~0x7F) != 0) {
+                prefix[prefixLength++] = (byte) ((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            prefix[prefixLength++] = (byte) remaining;
+            output.write(prefix, 0, prefixLength);
+            output.write(buffer, 0, length);
+        }
+    }
+}
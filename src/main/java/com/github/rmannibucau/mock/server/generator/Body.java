@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Captured body bytes. Small bodies are kept in the heap, big ones can be spilled to a temporary file
+ * which is mapped in memory so they don't use heap until they are serialized.
+ *
+ * Bytes are shared, they must not be modified.
+ */
+public final class Body {
+    private static final Logger LOGGER = Logger.getLogger(Body.class.getName());
+
+    private final byte[] bytes;
+    private final ByteBuffer mapped;
+    private final Path file;
+
+    private Body(final byte[] bytes, final ByteBuffer mapped, final Path file) {
+        this.bytes = bytes;
+        this.mapped = mapped;
+        this.file = file;
+    }
+
+    public static Body of(final byte[] bytes) {
+        return new Body(bytes, null, null);
+    }
+
+    static Body mapped(final ByteBuffer mapped, final Path file) {
+        return new Body(null, mapped, file);
+    }
+
+    public int length() {
+        return bytes != null ? bytes.length : mapped.limit();
+    }
+
+    public boolean isMapped() {
+        return mapped != null;
+    }
+
+    /**
+     * @return a read only view of the bytes, it does not copy them.
+     */
+    public ByteBuffer asByteBuffer() {
+        return bytes != null ? ByteBuffer.wrap(bytes).asReadOnlyBuffer() : mapped.duplicate();
+    }
+
+    /**
+     * @return the bytes, for a heap body it is the backing array (no copy).
+     */
+    public byte[] toByteArray() {
+        if (bytes != null) {
+            return bytes;
+        }
+        final byte[] copy = new byte[mapped.limit()];
+        mapped.duplicate().get(copy);
+        return copy;
+    }
+
+    public String toString(final Charset charset) {
+        if (bytes != null) {
+            return new String(bytes, charset);
+        }
+        return charset.decode(mapped.duplicate()).toString();
+    }
+
+    /**
+     * Deletes the backing file of a spilled body, it is a no-op for heap bodies.
+     */
+    public void release() {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) { // mapped files can't be deleted on some OS
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return this == o || (Body.class.isInstance(o) && asByteBuffer().equals(Body.class.cast(o).asByteBuffer()));
+    }
+
+    @Override
+    public int hashCode() {
+        return asByteBuffer().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Body(length=" + length() + ", mapped=" + isMapped() + ")";
+    }
+}
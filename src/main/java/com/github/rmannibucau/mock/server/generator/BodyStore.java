@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Content addressed directory for big bodies: each body is written once in a file named by its SHA-256
+ * and HAR entries only reference it ({@code _file} attribute of the content/post data).
+ * It keeps the heap usage independent of the payload sizes and identical payloads share the same file.
+ *
+ * Stored bodies are always referenced with a {@code base64} encoding, {@link HarWriter#withInlinedBodies(BodyStore)}
+ * can then inline them at write time without loading them in memory.
+ *
+ * Instances are thread safe.
+ */
+public class BodyStore {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final Pattern REFERENCE = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path directory;
+    private final LongAdder storedBodies = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private int threshold = 64 * 1024;
+
+    /**
+     * @param directory where to write the bodies, it is created if needed.
+     */
+    public BodyStore(final Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Can't create '" + directory + "'", e);
+        }
+    }
+
+    /**
+     * @param threshold min size (in bytes) of a body to be stored, smaller ones stay inline. Default to 64k.
+     * @return this store.
+     */
+    public BodyStore withThreshold(final int threshold) {
+        this.threshold = threshold;
+        return this;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return number of bodies written in the directory (a body already stored is not counted again).
+     */
+    public long getStoredBodies() {
+        return storedBodies.sum();
+    }
+
+    public long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    boolean accepts(final Body body) {
+        return body.length() >= threshold;
+    }
+
+    /**
+     * @param body the body to store.
+     * @return the reference of the body (its hash), it is also its file name.
+     */
+    public String store(final Body body) {
+        final String reference = hash(body.asByteBuffer());
+        final Path target = directory.resolve(reference);
+        if (Files.exists(target)) {
+            return reference;
+        }
+        try {
+            final Path tmp = Files.createTempFile(directory, reference, ".part");
+            try {
+                try (final FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    final ByteBuffer buffer = body.asByteBuffer();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                move(tmp, target);
+                storedBodies.increment();
+                storedBytes.add(body.length());
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Can't store body '" + reference + "'", e);
+        }
+        return reference;
+    }
+
+    /**
+     * @param reference a reference returned by {@link #store(Body)}.
+     * @return the file of the body.
+     */
+    public Path resolve(final String reference) {
+        if (reference == null || !REFERENCE.matcher(reference).matches()) { // don't let a HAR point anywhere on the disk
+            throw new IllegalArgumentException("Invalid body reference: '" + reference + "'");
+        }
+        return directory.resolve(reference);
+    }
+
+    public InputStream open(final String reference) {
+        try {
+            return new BufferedInputStream(Files.newInputStream(resolve(reference)), 64 * 1024);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hash(final ByteBuffer bytes) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(bytes);
+        final byte[] hash = digest.digest();
+        final char[] out = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            out[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            out[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    private static void move(final Path from, final Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            try {
+                Files.move(from, to);
+            } catch (final FileAlreadyExistsException faee) {
+                // concurrently stored, same content
+            }
+        } catch (final FileAlreadyExistsException faee) {
+            // same
+        }
+    }
+}
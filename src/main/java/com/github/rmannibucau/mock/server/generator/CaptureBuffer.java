@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded body copy backed by pooled chunks: bytes after {@code maxSize} are only counted.
+ * Once {@code spillThreshold} bytes are captured, the bytes are moved to a temporary file and the next ones
+ * are appended to it (through a single pooled chunk), the resulting {@link Body} is then a memory mapping of that file.
+ * A heap body is copied once from the chunks to its array when the capture completes.
+ * It is not thread safe, a buffer is owned by a single entity stream.
+ */
+class CaptureBuffer {
+    private static final Logger LOGGER = Logger.getLogger(CaptureBuffer.class.getName());
+
+    private final BufferPool pool;
+    private final int maxSize;
+    private final List<byte[]> chunks = new ArrayList<>(4);
+    private int spillThreshold;
+    private byte[] current;
+    private int position;
+    private int captured;
+    private long total;
+    private Path file;
+    private FileChannel channel;
+    private boolean spilled;
+
+    CaptureBuffer(final BufferPool pool, final int maxSize) {
+        this(pool, maxSize, Integer.MAX_VALUE);
+    }
+
+    CaptureBuffer(final BufferPool pool, final int maxSize, final int spillThreshold) {
+        this.pool = pool;
+        this.maxSize = maxSize;
+        this.spillThreshold = spillThreshold;
+    }
+
+    void write(final int b) {
+        total++;
+        if (captured == maxSize) {
+            return;
+        }
+        if (current == null || position == current.length) {
+            nextChunk();
+        }
+        current[position++] = (byte) b;
+        captured++;
+        checkSpill();
+    }
+
+    void write(final byte[] b, final int off, final int len) {
+        total += len;
+        int remaining = Math.min(len, maxSize - captured);
+        int offset = off;
+        while (remaining > 0) {
+            if (current == null || position == current.length) {
+                nextChunk();
+            }
+            final int length = Math.min(remaining, current.length - position);
+            System.arraycopy(b, offset, current, position, length);
+            position += length;
+            offset += length;
+            remaining -= length;
+            captured += length;
+        }
+        checkSpill();
+    }
+
+    long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the captured bytes, the caller owns the returned body (it must release it).
+     */
+    Body toBody() {
+        if (channel == null) {
+            final byte[] out = new byte[captured];
+            int offset = 0;
+            for (final byte[] chunk : chunks) {
+                final int length = Math.min(chunk.length, captured - offset);
+                System.arraycopy(chunk, 0, out, offset, length);
+                offset += length;
+            }
+            return Body.of(out);
+        }
+        try {
+            flushCurrent();
+            final Body body = Body.mapped(channel.map(FileChannel.MapMode.READ_ONLY, 0, captured), file);
+            file = null; // owned by the body now
+            return body;
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        } finally { // on failure the file is still owned by this buffer and deleted
+            closeAndDelete();
+        }
+    }
+
+    void release() {
+        chunks.forEach(pool::release);
+        chunks.clear();
+        if (spilled) { // current is not in chunks when spilled
+            pool.release(current);
+            closeAndDelete();
+        }
+        current = null;
+        position = 0;
+    }
+
+    private void checkSpill() {
+        if (channel == null && captured >= spillThreshold && !spilled) {
+            spill();
+        }
+    }
+
+    private void nextChunk() {
+        if (channel != null) {
+            flushCurrent();
+            return;
+        }
+        current = pool.acquire();
+        position = 0;
+        chunks.add(current);
+    }
+
+    // all chunks but the current one are full when it is called
+    private void spill() {
+        try {
+            file = Files.createTempFile("har-body-", ".bin");
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE); // read to map it
+            for (final byte[] chunk : chunks) {
+                writeFully(ByteBuffer.wrap(chunk, 0, chunk == current ? position : chunk.length));
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Can't spill body to disk, keeping it in memory: " + e.getMessage(), e);
+            closeAndDelete();
+            spillThreshold = Integer.MAX_VALUE;
+            return;
+        }
+        spilled = true;
+        current = chunks.isEmpty() ? pool.acquire() : chunks.remove(chunks.size() - 1); // reused as write buffer
+        chunks.forEach(pool::release);
+        chunks.clear();
+        position = 0;
+    }
+
+    private void flushCurrent() {
+        try {
+            writeFully(ByteBuffer.wrap(current, 0, position));
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        position = 0;
+    }
+
+    private void writeFully(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void closeAndDelete() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+        } finally {
+            channel = null;
+            file = null;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and gauges of a capture feature. Counters are {@link LongAdder} so recording does not allocate
+ * nor contend between request threads, gauges (queue depth, in memory entries) are only computed when read.
+ *
+ * Metrics can be registered as a MBean ({@code com.github.rmannibucau.mock.server.generator:type=HarCapture,name=<name>}).
+ */
+public class CaptureMetrics implements CaptureMetricsMBean {
+    private final LongAdder capturedExchanges = new LongAdder();
+    private final LongAdder capturedBytes = new LongAdder();
+    private final LongAdder writtenEntries = new LongAdder();
+    private final LongAdder collapsedEntries = new LongAdder();
+    private final LongAdder conversions = new LongAdder();
+    private final LongAdder conversionTime = new LongAdder();
+    private final LongAdder writeTime = new LongAdder();
+
+    private volatile AsyncCapture asyncCapture;
+    private volatile Collection<?> inMemoryEntries;
+    private volatile LatencyStatistics latencyStatistics;
+    private volatile ObjectName objectName;
+
+    void onExchange(final Exchange exchange) {
+        capturedExchanges.increment();
+        if (exchange.getRequestBody() != null) {
+            capturedBytes.add(exchange.getRequestBody().length());
+        }
+        if (exchange.getResponseBody() != null) {
+            capturedBytes.add(exchange.getResponseBody().length());
+        }
+    }
+
+    void onConverted(final long durationNanos) {
+        conversions.increment();
+        conversionTime.add(durationNanos);
+    }
+
+    void onWritten(final long durationNanos) {
+        writtenEntries.increment();
+        writeTime.add(durationNanos);
+    }
+
+    void onCollapsed() {
+        collapsedEntries.increment();
+    }
+
+    void bind(final AsyncCapture asyncCapture, final Collection<?> inMemoryEntries, final LatencyStatistics latencyStatistics) {
+        this.asyncCapture = asyncCapture;
+        this.inMemoryEntries = inMemoryEntries;
+        this.latencyStatistics = latencyStatistics;
+    }
+
+    /**
+     * @param name the name of the MBean, it identifies the feature.
+     * @return the object name of the registered MBean.
+     */
+    public synchronized ObjectName register(final String name) {
+        if (objectName != null) {
+            throw new IllegalStateException("Already registered as " + objectName);
+        }
+        try {
+            final ObjectName on = new ObjectName("com.github.rmannibucau.mock.server.generator:type=HarCapture,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+            return on;
+        } catch (final JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (final JMException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getCapturedExchanges() {
+        return capturedExchanges.sum();
+    }
+
+    @Override
+    public long getWrittenEntries() {
+        return writtenEntries.sum();
+    }
+
+    @Override
+    public long getCollapsedEntries() {
+        return collapsedEntries.sum();
+    }
+
+    @Override
+    public long getDroppedExchanges() {
+        final AsyncCapture capture = asyncCapture;
+        return capture == null ? 0 : capture.getDropped();
+    }
+
+    @Override
+    public long getCapturedBytes() {
+        return capturedBytes.sum();
+    }
+
+    @Override
+    public int getPendingExchanges() {
+        final AsyncCapture capture = asyncCapture;
+        return capture == null ? 0 : capture.getPending();
+    }
+
+    @Override
+    public int getInMemoryEntries() {
+        final Collection<?> entries = inMemoryEntries;
+        return entries == null ? 0 : entries.size();
+    }
+
+    @Override
+    public long getConversionTime() {
+        return conversionTime.sum();
+    }
+
+    @Override
+    public long getMeanConversionTime() {
+        final long count = conversions.sum();
+        return count == 0 ? 0 : conversionTime.sum() / count;
+    }
+
+    @Override
+    public long getWriteTime() {
+        return writeTime.sum();
+    }
+
+    @Override
+    public long getMeanWriteTime() {
+        final long count = writtenEntries.sum();
+        return count == 0 ? 0 : writeTime.sum() / count;
+    }
+
+    @Override
+    public String[] getEndpointLatencies() {
+        final LatencyStatistics statistics = latencyStatistics;
+        if (statistics == null) {
+            return new String[0];
+        }
+        return statistics.getHistograms().entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(it -> it.getKey() + ": count=" + it.getValue().getCount()
+                        + ", p50=" + toMillis(it.getValue().getValueAtPercentile(50))
+                        + "ms, p99=" + toMillis(it.getValue().getValueAtPercentile(99))
+                        + "ms, max=" + toMillis(it.getValue().getMax()) + "ms")
+                .toArray(String[]::new);
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
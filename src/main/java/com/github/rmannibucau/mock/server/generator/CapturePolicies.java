@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.stream.Collectors.joining;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Built-in capture policies, they can be combined with {@link CapturePolicy#and(CapturePolicy)}:
+ *
+ * <pre>
+ * CapturePolicies.sample(0.1)
+ *     .and(CapturePolicies.exclude("*&#47;health/**"))
+ *     .and(CapturePolicies.maxEntriesPerEndpoint(100))
+ *     .and(CapturePolicies.bytesPerSecond(1024 * 1024))
+ * </pre>
+ */
+public final class CapturePolicies {
+    private CapturePolicies() {
+        // no-op
+    }
+
+    /**
+     * @param rate the ratio of captured requests, between 0 and 1.
+     * @return a policy capturing randomly {@code rate} of the requests.
+     */
+    public static CapturePolicy sample(final double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("rate must be between 0 and 1");
+        }
+        return (method, uri) -> rate == 1 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * Globs are matched against {@code host/path}, {@code *} matches any character but {@code /}
+     * and {@code **} matches any character, for instance {@code api.company.com/users/**}.
+     *
+     * @param globs the globs to match.
+     * @return a policy capturing only requests matching one of the globs.
+     */
+    public static CapturePolicy include(final String... globs) {
+        final Pattern pattern = toPattern(globs);
+        return (method, uri) -> pattern.matcher(toMatchable(uri)).matches();
+    }
+
+    /**
+     * @param globs the globs to match, see {@link #include(String...)} for the syntax.
+     * @return a policy capturing only requests not matching any of the globs.
+     */
+    public static CapturePolicy exclude(final String... globs) {
+        final Pattern pattern = toPattern(globs);
+        return (method, uri) -> !pattern.matcher(toMatchable(uri)).matches();
+    }
+
+    /**
+     * @param statuses the status filter, for instance {@code it -> it >= 400}.
+     * @return a policy capturing only exchanges with a matching status.
+     */
+    public static CapturePolicy status(final IntPredicate statuses) {
+        return new CapturePolicy() {
+            @Override
+            public boolean accept(final String method, final URI uri) {
+                return true;
+            }
+
+            @Override
+            public boolean accept(final String method, final URI uri, final int status) {
+                return statuses.test(status);
+            }
+        };
+    }
+
+    /**
+     * @param max max number of captured exchanges per endpoint (method and path template).
+     * @return a policy limiting the number of exchanges per endpoint.
+     */
+    public static CapturePolicy maxEntriesPerEndpoint(final int max) {
+        final ConcurrentMap<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+        return new CapturePolicy() {
+            @Override
+            public boolean accept(final String method, final URI uri) {
+                final AtomicInteger counter = counters.get(key(method, uri));
+                return counter == null || counter.get() < max;
+            }
+
+            @Override
+            public boolean accept(final String method, final URI uri, final int status) {
+                return counters.computeIfAbsent(key(method, uri), k -> new AtomicInteger()).incrementAndGet() <= max;
+            }
+
+            private String key(final String method, final URI uri) {
+                return method + ' ' + PathTemplates.toTemplate(uri.getPath());
+            }
+        };
+    }
+
+    /**
+     * Token bucket limiting the captured bytes (request and response bodies).
+     * A request is captured if the bucket is not empty, its actual size is consumed once complete
+     * so the bucket can become negative and skip the next requests until it is refilled.
+     *
+     * @param bytesPerSecond the refill rate and capacity of the bucket.
+     * @return a policy limiting the captured bytes per second.
+     */
+    public static CapturePolicy bytesPerSecond(final long bytesPerSecond) {
+        return new TokenBucket(bytesPerSecond);
+    }
+
+    private static String toMatchable(final URI uri) {
+        final String host = uri.getHost();
+        final String path = uri.getPath();
+        return (host == null ? "" : host) + (path == null || path.isEmpty() ? "/" : path);
+    }
+
+    private static Pattern toPattern(final String... globs) {
+        return Pattern.compile(Stream.of(globs).map(CapturePolicies::toRegex).collect(joining("|")));
+    }
+
+    private static String toRegex(final String glob) {
+        final StringBuilder regex = new StringBuilder(glob.length() + 8).append("(?:");
+        int start = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            if (glob.charAt(i) == '*') {
+                if (start < i) {
+                    regex.append(Pattern.quote(glob.substring(start, i)));
+                }
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+                start = i + 1;
+            }
+        }
+        if (start < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(start)));
+        }
+        return regex.append(')').toString();
+    }
+
+    private static class TokenBucket implements CapturePolicy {
+        private final long capacity;
+        private final AtomicLong available;
+        private final AtomicLong lastRefill = new AtomicLong(System.nanoTime());
+
+        private TokenBucket(final long capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("bytesPerSecond must be positive");
+            }
+            this.capacity = capacity;
+            this.available = new AtomicLong(capacity);
+        }
+
+        @Override
+        public boolean accept(final String method, final URI uri) {
+            refill();
+            return available.get() > 0;
+        }
+
+        @Override
+        public void onCaptured(final String method, final URI uri, final long bytes) {
+            available.addAndGet(-bytes);
+        }
+
+        private void refill() {
+            final long now = System.nanoTime();
+            final long last = lastRefill.get();
+            final long elapsed = now - last;
+            if (elapsed < 1_000_000) { // refill at most every ms
+                return;
+            }
+            final long tokens = (long) (elapsed / 1_000_000_000. * capacity);
+            if (tokens == 0) { // keep the elapsed time as credit for the next refill
+                return;
+            }
+            // only consume the time the tokens correspond to, the remainder is credited to the next refill
+            final long consumed = Math.min(elapsed, (long) Math.ceil(tokens * 1_000_000_000. / capacity));
+            if (!lastRefill.compareAndSet(last, last + consumed)) {
+                return;
+            }
+            available.accumulateAndGet(tokens, (current, added) -> Math.min(capacity, current + added));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.net.URI;
+
+/**
+ * Selects the exchanges to capture. {@link #accept(String, URI)} is evaluated when the request starts,
+ * a rejected request is not captured at all. {@link #accept(String, URI, int)} is evaluated when the response
+ * starts and {@link #onCaptured(String, URI, long)} when the exchange is complete.
+ *
+ * Implementations must be thread safe, see {@link CapturePolicies} for the built-in ones.
+ */
+public interface CapturePolicy {
+    CapturePolicy ALL = (method, uri) -> true;
+
+    boolean accept(String method, URI uri);
+
+    default boolean accept(final String method, final URI uri, final int status) {
+        return true;
+    }
+
+    default void onCaptured(final String method, final URI uri, final long bytes) {
+        // no-op
+    }
+
+    default CapturePolicy and(final CapturePolicy next) {
+        final CapturePolicy self = this;
+        return new CapturePolicy() {
+            @Override
+            public boolean accept(final String method, final URI uri) {
+                return self.accept(method, uri) && next.accept(method, uri);
+            }
+
+            @Override
+            public boolean accept(final String method, final URI uri, final int status) {
+                return self.accept(method, uri, status) && next.accept(method, uri, status);
+            }
+
+            @Override
+            public void onCaptured(final String method, final URI uri, final long bytes) {
+                self.onCaptured(method, uri, bytes);
+                next.onCaptured(method, uri, bytes);
+            }
+        };
+    }
+}
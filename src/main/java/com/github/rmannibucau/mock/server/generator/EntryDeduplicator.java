@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Shares identical bodies, headers and header lists between entries, repeated values are looked up
+ * in a bounded LRU store so repetitive traffic only keeps one instance of each value.
+ *
+ * Optionally identical request/response pairs (ignoring timings and volatile headers like {@code Date})
+ * are collapsed: only the first entry is kept and its comment holds the number of hits ({@code hits: N}).
+ * Since the first entry is updated after it was emitted, the hit counts are only visible in memory:
+ * {@link HarCaptureFeature} rejects collapsing with a streaming sink and {@link HarMerger} only drops the duplicates.
+ *
+ * Interned values are shared so entries must be considered immutable once deduplicated.
+ */
+public class EntryDeduplicator implements UnaryOperator<Har.Entry> {
+    private final Lru<String, String> internedTexts;
+    private final Lru<Har.Header, Har.Header> internedHeaders;
+    private final Lru<List<Har.Header>, List<Har.Header>> internedHeaderLists;
+    private final Lru<List<Object>, Collapsed> collapsed;
+    private final LongAdder internHits = new LongAdder();
+    private final LongAdder collapsedEntries = new LongAdder();
+    private boolean collapse;
+    private Set<String> ignoredHeaders = Stream.of("date", "expires", "age", "set-cookie").collect(toSet());
+
+    /**
+     * @param maxEntries max number of values of each kind (texts, headers, header lists and collapsed pairs)
+     *                   kept in the interning store.
+     */
+    public EntryDeduplicator(final int maxEntries) {
+        this.internedTexts = new Lru<>(maxEntries);
+        this.internedHeaders = new Lru<>(maxEntries);
+        this.internedHeaderLists = new Lru<>(maxEntries);
+        this.collapsed = new Lru<>(maxEntries);
+    }
+
+    /**
+     * @param collapse should identical request/response pairs be collapsed in a single entry.
+     * @return this deduplicator.
+     */
+    public EntryDeduplicator withCollapse(final boolean collapse) {
+        this.collapse = collapse;
+        return this;
+    }
+
+    /**
+     * @param headers headers ignored to compare pairs (case insensitive), defaults to date, expires, age and set-cookie.
+     * @return this deduplicator.
+     */
+    public EntryDeduplicator withIgnoredHeaders(final String... headers) {
+        this.ignoredHeaders = Stream.of(headers).map(it -> it.toLowerCase(Locale.ROOT)).collect(toSet());
+        return this;
+    }
+
+    public boolean isCollapse() {
+        return collapse;
+    }
+
+    public long getInternHits() {
+        return internHits.sum();
+    }
+
+    public long getCollapsedEntries() {
+        return collapsedEntries.sum();
+    }
+
+    /**
+     * @param entry the entry to deduplicate.
+     * @return the deduplicated entry or null if it was collapsed in a previous one.
+     */
+    @Override
+    public Har.Entry apply(final Har.Entry entry) {
+        final Har.Request request = entry.getRequest();
+        final Har.Response response = entry.getResponse();
+        if (request != null) {
+            request.setHeaders(internHeaders(request.getHeaders()));
+            if (request.getPostData() != null) {
+                request.getPostData().setText(intern(internedTexts, request.getPostData().getText()));
+            }
+        }
+        if (response != null) {
+            response.setHeaders(internHeaders(response.getHeaders()));
+            if (response.getContent() != null) {
+                response.getContent().setText(intern(internedTexts, response.getContent().getText()));
+            }
+        }
+        if (!collapse || request == null || response == null) {
+            return entry;
+        }
+
+        final List<Object> key = asList(
+                request.getMethod(), request.getUrl(), request.getQueryString(),
+                withoutIgnoredHeaders(request.getHeaders()),
+                request.getPostData() == null ? null : request.getPostData().getText(),
+                request.getPostData() == null ? null : request.getPostData().getFile(),
+                response.getStatus(), withoutIgnoredHeaders(response.getHeaders()),
+                response.getContent() == null ? null : response.getContent().getText(),
+                response.getContent() == null ? null : response.getContent().getFile());
+        synchronized (collapsed) {
+            final Collapsed existing = collapsed.get(key);
+            if (existing == null) {
+                collapsed.put(key, new Collapsed(entry));
+                return entry;
+            }
+            existing.hits++;
+            existing.entry.setComment("hits: " + existing.hits);
+        }
+        collapsedEntries.increment();
+        return null;
+    }
+
+    private Collection<Har.Header> internHeaders(final Collection<Har.Header> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return headers;
+        }
+        final List<Har.Header> values = new ArrayList<>(headers.size());
+        for (final Har.Header header : headers) {
+            values.add(intern(internedHeaders, header));
+        }
+        return intern(internedHeaderLists, values);
+    }
+
+    private List<Har.Header> withoutIgnoredHeaders(final Collection<Har.Header> headers) {
+        if (headers == null) {
+            return null;
+        }
+        return headers.stream()
+                .filter(it -> it.getName() == null || !ignoredHeaders.contains(it.getName().toLowerCase(Locale.ROOT)))
+                .collect(toList());
+    }
+
+    private <T> T intern(final Map<T, T> interned, final T value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (interned) {
+            final T existing = interned.putIfAbsent(value, value);
+            if (existing != null) {
+                internHits.increment();
+                return existing;
+            }
+        }
+        return value;
+    }
+
+    @RequiredArgsConstructor
+    private static class Collapsed {
+        private final Har.Entry entry;
+        private int hits = 1;
+    }
+
+    private static class Lru<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        private Lru(final int maxSize) {
+            super(16, .75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
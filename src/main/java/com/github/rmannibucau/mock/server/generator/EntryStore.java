@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.Comparator.comparing;
+import static java.util.Comparator.naturalOrder;
+import static java.util.Comparator.nullsFirst;
+
+import java.time.ZonedDateTime;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+/**
+ * Append only and lock free entry collection.
+ *
+ * Appends are spread over stripes (selected from the calling thread) which are linked lists of fixed size chunks,
+ * a slot is reserved with a single atomic increment so there is no copy nor lock whatever the number of entries is.
+ * Reads take a snapshot of all stripes and merge them ordered by {@code startedDateTime} then by append time.
+ *
+ * Only {@link #add(Har.Entry)} and {@link #clear()} are supported as mutations.
+ */
+public class EntryStore extends AbstractCollection<Har.Entry> {
+    private static final int CHUNK_SIZE = 1024;
+
+    private static final Comparator<Slot> ORDER = Comparator.<Slot, ZonedDateTime>comparing(
+            it -> it.entry.getStartedDateTime(), nullsFirst(naturalOrder()))
+            .thenComparing(comparing(it -> it.stamp));
+
+    private final int mask;
+    private volatile Stripe[] stripes;
+
+    public EntryStore() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public EntryStore(final int concurrency) {
+        int size = 1;
+        while (size < concurrency) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.stripes = newStripes(size);
+    }
+
+    @Override
+    public boolean add(final Har.Entry entry) {
+        if (entry == null) {
+            throw new NullPointerException("entry can't be null");
+        }
+        stripes[(int) Thread.currentThread().getId() & mask].add(entry, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public int size() {
+        long size = 0;
+        for (final Stripe stripe : stripes) {
+            for (Chunk chunk = stripe.head; chunk != null; chunk = chunk.next) {
+                size += Math.min(CHUNK_SIZE, chunk.reserved.get());
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (final Stripe stripe : stripes) {
+            if (stripe.head.reserved.get() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Swaps the stripes so it does not block the appends. An {@link #add(Har.Entry)} running concurrently
+     * can still land in the previous stripes and is then dropped with them, it is as if it completed before the clear.
+     * Appends started after this method returned are always kept.
+     */
+    @Override
+    public void clear() {
+        stripes = newStripes(mask + 1);
+    }
+
+    @Override
+    public Iterator<Har.Entry> iterator() {
+        final List<Slot> slots = new ArrayList<>();
+        for (final Stripe stripe : stripes) {
+            for (Chunk chunk = stripe.head; chunk != null; chunk = chunk.next) {
+                final int max = Math.min(CHUNK_SIZE, chunk.reserved.get());
+                for (int i = 0; i < max; i++) {
+                    final Har.Entry entry = chunk.entries.get(i);
+                    if (entry != null) { // else the slot is being written, not yet visible
+                        slots.add(new Slot(entry, chunk.stamps[i]));
+                    }
+                }
+            }
+        }
+        slots.sort(ORDER);
+        final Iterator<Slot> delegate = slots.iterator();
+        return new Iterator<Har.Entry>() {
+            @Override
+            public boolean hasNext() {
+                return delegate.hasNext();
+            }
+
+            @Override
+            public Har.Entry next() {
+                return delegate.next().entry;
+            }
+        };
+    }
+
+    private static Stripe[] newStripes(final int size) {
+        final Stripe[] stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        return stripes;
+    }
+
+    private static class Slot {
+        private final Har.Entry entry;
+        private final long stamp;
+
+        private Slot(final Har.Entry entry, final long stamp) {
+            this.entry = entry;
+            this.stamp = stamp;
+        }
+    }
+
+    private static class Stripe {
+        private static final AtomicReferenceFieldUpdater<Stripe, Chunk> TAIL =
+                AtomicReferenceFieldUpdater.newUpdater(Stripe.class, Chunk.class, "tail");
+
+        private final Chunk head = new Chunk();
+        private volatile Chunk tail = head;
+
+        private void add(final Har.Entry entry, final long stamp) {
+            while (true) {
+                final Chunk current = tail;
+                final int index = current.reserved.getAndIncrement();
+                if (index < CHUNK_SIZE) {
+                    current.stamps[index] = stamp;
+                    current.entries.set(index, entry); // publishes the stamp too
+                    return;
+                }
+                Chunk next = current.next;
+                if (next == null) {
+                    final Chunk created = new Chunk();
+                    next = Chunk.NEXT.compareAndSet(current, null, created) ? created : current.next;
+                }
+                TAIL.compareAndSet(this, current, next);
+            }
+        }
+    }
+
+    private static class Chunk {
+        private static final AtomicReferenceFieldUpdater<Chunk, Chunk> NEXT =
+                AtomicReferenceFieldUpdater.newUpdater(Chunk.class, Chunk.class, "next");
+
+        private final AtomicReferenceArray<Har.Entry> entries = new AtomicReferenceArray<>(CHUNK_SIZE);
+        private final long[] stamps = new long[CHUNK_SIZE];
+        private final AtomicInteger reserved = new AtomicInteger();
+        private volatile Chunk next;
+    }
+}
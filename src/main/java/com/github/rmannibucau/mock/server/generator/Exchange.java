@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.NewCookie;
+
+import lombok.Data;
+
+/**
+ * Raw snapshot of a request/response pair, it is what is captured on the request thread
+ * and later converted to a {@link com.github.rmannibucau.mock.server.generator.model.Har.Entry}.
+ */
+@Data
+public class Exchange {
+    private long startedDateTime; // epoch millis
+    private long startNanos; // request filter
+    private long sentNanos; // request entity written
+    private long responseNanos; // response filter
+    private long endNanos; // response entity read
+
+    private String method;
+    private URI uri;
+    private Map<String, List<Object>> requestHeaders;
+    private Map<String, Cookie> requestCookies;
+    private MediaType requestMediaType;
+    private Body requestBody;
+    private long requestBodySize; // can be bigger than the captured body if truncated
+
+    private int status;
+    private Map<String, List<String>> responseHeaders;
+    private Map<String, NewCookie> responseCookies;
+    private MediaType responseMediaType;
+    private Body responseBody;
+    private long responseBodySize;
+
+    /**
+     * Releases the bodies (temporary files of spilled bodies), the exchange must not be used after.
+     */
+    public void release() {
+        if (requestBody != null) {
+            requestBody.release();
+        }
+        if (responseBody != null) {
+            responseBody.release();
+        }
+    }
+}
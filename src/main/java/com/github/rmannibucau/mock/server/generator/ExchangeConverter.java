@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.NewCookie;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Providers;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Converts a raw {@link Exchange} to a HAR entry, it does all the mapping work
+ * so it can be executed out of the request thread.
+ * Providers can be null when converting offline, form bodies are then kept as text.
+ * When a {@link BodyStore} is set, big bodies are written to it and only referenced by the entry.
+ */
+@RequiredArgsConstructor
+class ExchangeConverter implements Function<Exchange, Har.Entry> {
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    private final Providers providers;
+    private final BodyStore bodyStore;
+
+    ExchangeConverter(final Providers providers) {
+        this(providers, null);
+    }
+
+    @Override
+    public Har.Entry apply(final Exchange exchange) {
+        final Har.Entry entry = new Har.Entry();
+        if (exchange.getStartedDateTime() > 0) {
+            entry.setStartedDateTime(ZonedDateTime.ofInstant(Instant.ofEpochMilli(exchange.getStartedDateTime()), UTC));
+        }
+        if (exchange.getStartNanos() > 0) {
+            entry.setTimings(createTimings(exchange));
+            entry.setTime(toMillis(exchange.getEndNanos() - exchange.getStartNanos()));
+        }
+        entry.setRequest(createRequest(exchange));
+        entry.setResponse(createResponse(exchange));
+        return entry;
+    }
+
+    private Har.Timings createTimings(final Exchange exchange) {
+        final Har.Timings timings = new Har.Timings();
+        timings.setSend(toMillis(exchange.getSentNanos() - exchange.getStartNanos()));
+        timings.setWait(toMillis(exchange.getResponseNanos() - exchange.getSentNanos()));
+        timings.setReceive(toMillis(exchange.getEndNanos() - exchange.getResponseNanos()));
+        return timings;
+    }
+
+    private long toMillis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, nanos));
+    }
+
+    private Har.Response createResponse(final Exchange exchange) {
+        final Har.Response response = new Har.Response();
+
+        final Body body = exchange.getResponseBody();
+        final MediaType mediaType = exchange.getResponseMediaType();
+        if (body != null) {
+            response.setBodySize(exchange.getResponseBodySize());
+
+            final Har.Content content = new Har.Content();
+            if (mediaType != null) {
+                content.setMimeType(mediaType.toString());
+            }
+            if (bodyStore != null && bodyStore.accepts(body)) {
+                content.setEncoding("base64");
+                content.setFile(bodyStore.store(body));
+            } else if (mediaType != null) {
+                if (asList(MediaType.APPLICATION_OCTET_STREAM_TYPE, MediaType.MULTIPART_FORM_DATA_TYPE).contains(mediaType)) {
+                    content.setEncoding("base64");
+                    content.setText(new String(Base64.getEncoder().encode(body.asByteBuffer()).array(), StandardCharsets.ISO_8859_1));
+                }
+            }
+            if (content.getText() == null && content.getFile() == null) {
+                content.setText(body.toString(charset(mediaType)));
+            }
+            content.setSize(exchange.getResponseBodySize());
+            if (exchange.getResponseBodySize() > body.length()) {
+                content.setComment(truncationMarker(body.length(), exchange.getResponseBodySize()));
+            }
+            response.setContent(content);
+        } else {
+            response.setBodySize(-1);
+        }
+
+        response.setStatus(exchange.getStatus());
+        if (exchange.getStatus() == Response.Status.TEMPORARY_REDIRECT.getStatusCode()
+                || exchange.getStatus() == HttpURLConnection.HTTP_MOVED_PERM
+                || exchange.getStatus() == HttpURLConnection.HTTP_MOVED_TEMP) {
+            response.setRedirectURL(findHeader(exchange.getResponseHeaders(), "Location"));
+        }
+        final List<Har.Header> headers = mapHeaders(exchange.getResponseHeaders());
+        response.setHeaders(headers);
+        long headersSize = 0;
+        for (final Har.Header header : headers) { // name: value\r\n
+            headersSize += utf8Length(header.getName()) + utf8Length(header.getValue()) + 4;
+        }
+        response.setHeadersSize(headersSize);
+        final Collection<Har.Cookie> cookies = toCookies(exchange.getResponseCookies());
+        if (cookies != null) {
+            response.setCookies(cookies);
+        }
+
+        return response;
+    }
+
+    private Har.Request createRequest(final Exchange exchange) {
+        final Har.Request request = new Har.Request();
+
+        final Body body = exchange.getRequestBody();
+        final MediaType mediaType = exchange.getRequestMediaType();
+        if (body != null) {
+            request.setBodySize(exchange.getRequestBodySize());
+
+            final Har.PostData postData = new Har.PostData();
+            if (mediaType != null) {
+                postData.setMimeType(mediaType.toString());
+            }
+            if (bodyStore != null && bodyStore.accepts(body)) {
+                postData.setEncoding("base64");
+                postData.setFile(bodyStore.store(body));
+            } else if (mediaType != null) {
+                if (mediaType == MediaType.MULTIPART_FORM_DATA_TYPE && providers != null) {
+                    postData.setParams(mapParams(body, mediaType, toStringHeaders(exchange.getRequestHeaders())));
+                } else {
+                    postData.setText(body.toString(charset(mediaType)));
+                }
+            }
+            if (exchange.getRequestBodySize() > body.length()) {
+                postData.setComment(truncationMarker(body.length(), exchange.getRequestBodySize()));
+            }
+            request.setPostData(postData);
+        } else {
+            request.setBodySize(-1);
+        }
+
+        request.setMethod(exchange.getMethod());
+        request.setQueryString(mapQuery(exchange.getUri().getQuery()));
+        request.setUrl(mapUrl(exchange.getUri()));
+        request.setHeaders(mapHeaders(exchange.getRequestHeaders()));
+        final Collection<Har.Cookie> cookies = toCookies(exchange.getRequestCookies());
+        if (cookies != null) {
+            request.setCookies(cookies);
+        }
+        return request;
+    }
+
+    private Charset charset(final MediaType mediaType) {
+        final String charset = mediaType == null ? null : mediaType.getParameters().get(MediaType.CHARSET_PARAMETER);
+        if (charset != null) {
+            try {
+                return Charset.forName(charset);
+            } catch (final IllegalArgumentException iae) { // unknown/illegal charset
+                // fallback on the default
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private String truncationMarker(final int captured, final long size) {
+        return "truncated: " + captured + " bytes captured out of " + size;
+    }
+
+    private MultivaluedMap<String, String> toStringHeaders(final Map<String, List<Object>> headers) {
+        final MultivaluedMap<String, String> out = new MultivaluedHashMap<>();
+        headers.forEach((key, values) -> values.forEach(value -> out.add(key, String.valueOf(value))));
+        return out;
+    }
+
+    private String findHeader(final Map<String, List<String>> headers, final String name) {
+        for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return String.join(",", header.getValue());
+            }
+        }
+        return null;
+    }
+
+    private Collection<Har.Param> mapParams(final Body body, final MediaType type, final MultivaluedMap<String, String> headers) {
+        final Annotation[] annotations = new Annotation[0];
+        try {
+            return providers.getMessageBodyReader(Form.class, Form.class, annotations, type)
+                    .readFrom(Form.class, Form.class, annotations, type, headers, new ByteArrayInputStream(body.toByteArray()))
+                    .asMap().entrySet().stream()
+                    .map(it -> {
+                        final Har.Param param = new Har.Param();
+                        param.setName(it.getKey());
+                        param.setValue(it.getValue().stream().map(String::valueOf).collect(joining(",")));
+                        // todo: complete, see FormEncodingProvider
+                        return param;
+                    })
+                    .collect(toList());
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // keeps the '?' of the query like HAR consumers of this module expect
+    private String mapUrl(final URI uri) {
+        final String url = uri.toASCIIString();
+        if (uri.getRawQuery() == null || uri.getRawQuery().isEmpty()) {
+            return url;
+        }
+        final int query = url.indexOf('?');
+        return query < 0 ? url : url.substring(0, query + 1);
+    }
+
+    private Collection<Har.Query> mapQuery(final String query) {
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+        final List<Har.Query> out = new ArrayList<>();
+        int start = 0;
+        final int length = query.length();
+        while (start <= length) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) { // skip empty segments like split() does for trailing ones
+                final int sep = query.indexOf('=', start);
+                final Har.Query q = new Har.Query();
+                if (sep > start && sep < end) {
+                    q.setName(query.substring(start, sep));
+                    q.setValue(query.substring(sep + 1, end));
+                } else {
+                    q.setName(query.substring(start, end));
+                    q.setValue("");
+                }
+                out.add(q);
+            }
+            start = end + 1;
+        }
+        return out;
+    }
+
+    private List<Har.Header> mapHeaders(final Map<String, ? extends List<?>> headers) {
+        final List<Har.Header> out = new ArrayList<>(headers.size());
+        for (final Map.Entry<String, ? extends List<?>> header : headers.entrySet()) {
+            final Har.Header copy = new Har.Header();
+            copy.setName(header.getKey());
+            copy.setValue(joinValues(header.getValue()));
+            out.add(copy);
+        }
+        return out;
+    }
+
+    private String joinValues(final List<?> values) {
+        switch (values.size()) {
+            case 0:
+                return "";
+            case 1: // most common case, no copy for string values
+                return String.valueOf(values.get(0));
+            default:
+                final StringBuilder builder = new StringBuilder();
+                for (final Object value : values) {
+                    if (builder.length() > 0) {
+                        builder.append(',');
+                    }
+                    builder.append(value);
+                }
+                return builder.toString();
+        }
+    }
+
+    // size of the UTF-8 encoded value without encoding it
+    static int utf8Length(final String value) {
+        if (value == null) {
+            return 0;
+        }
+        final int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes++;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 2; // 4 bytes for 2 chars
+                    i++;
+                } else {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private Collection<Har.Cookie> toCookies(final Map<String, ? extends Cookie> cookies) {
+        if (cookies == null || cookies.isEmpty()) {
+            return null;
+        }
+        final List<Har.Cookie> out = new ArrayList<>(cookies.size());
+        for (final Cookie cookie : cookies.values()) {
+            out.add(mapCookie(cookie));
+        }
+        return out;
+    }
+
+    private Har.Cookie mapCookie(final Cookie it) {
+        final Har.Cookie cookie = new Har.Cookie();
+        cookie.setName(it.getName());
+        cookie.setValue(it.getValue());
+        cookie.setDomain(it.getDomain());
+        cookie.setPath(it.getPath());
+        if (NewCookie.class.isInstance(it)) {
+            final NewCookie nc = NewCookie.class.cast(it);
+            cookie.setHttpOnly(nc.isHttpOnly());
+            cookie.setSecure(nc.isSecure());
+            if (nc.getExpiry() != null) {
+                cookie.setExpires(ZonedDateTime.of(LocalDateTime.ofInstant(nc.getExpiry().toInstant(), UTC), UTC));
+            }
+        }
+        return cookie;
+    }
+}
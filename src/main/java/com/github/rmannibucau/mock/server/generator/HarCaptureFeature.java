@@ -0,0 +1,313 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.util.function.Consumer;
+
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Providers;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Configuration and processing pipeline shared by the client and server capture features:
+ * captured exchanges are converted, deduplicated and passed to the entry sink, synchronously or not.
+ * The pipeline can be observed through {@link CaptureMetrics}.
+ *
+ * @param <T> the feature type, used to chain the configuration methods.
+ */
+public abstract class HarCaptureFeature<T extends HarCaptureFeature<T>> implements AutoCloseable {
+    @Getter
+    private final Har har = new Har();
+
+    private final Consumer<Har.Entry> sink;
+
+    @Context
+    private Providers providers;
+
+    private int asyncThreads;
+    private int asyncQueueCapacity;
+    private AsyncCapture.BackPressure asyncBackPressure;
+    private int asyncSampleRate;
+    private volatile AsyncCapture asyncCapture;
+    @Getter(AccessLevel.PROTECTED)
+    private int maxCaptureSize = Integer.MAX_VALUE;
+    @Getter(AccessLevel.PROTECTED)
+    private CapturePolicy capturePolicy = CapturePolicy.ALL;
+    @Getter(AccessLevel.PROTECTED)
+    private int spillThreshold = Integer.MAX_VALUE;
+    private Consumer<Exchange> exchangeSink;
+    private EntryDeduplicator deduplicator;
+    private BodyStore bodyStore;
+
+    @Getter
+    private LatencyStatistics latencyStatistics;
+
+    @Getter
+    private CaptureMetrics metrics;
+
+    /**
+     * Captures entries in memory, they are available through {@link #getHar()}.
+     */
+    protected HarCaptureFeature() {
+        final EntryStore entries = new EntryStore();
+        this.har.getLog().setEntries(entries);
+        this.sink = entries::add;
+    }
+
+    /**
+     * Captures entries in streaming mode, each entry is passed to the sink as soon as it completes
+     * and is not kept in {@link #getHar()}. Typically used with a {@link HarStreamWriter}.
+     *
+     * @param sink the entry listener.
+     */
+    protected HarCaptureFeature(final Consumer<Har.Entry> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Converts captured exchanges to HAR entries in background threads, the request thread only snapshots
+     * the raw data. Ensure to {@link #close()} the feature before reading the HAR to get all entries.
+     *
+     * @param threads       number of conversion threads.
+     * @param queueCapacity max number of pending exchanges.
+     * @param backPressure  what to do when the conversion does not follow the request rate.
+     * @param sampleRate    when using {@link AsyncCapture.BackPressure#SAMPLE}, one exchange out of sampleRate is kept.
+     * @return this feature.
+     */
+    public T withAsyncCapture(final int threads, final int queueCapacity,
+                              final AsyncCapture.BackPressure backPressure, final int sampleRate) {
+        this.asyncThreads = threads;
+        this.asyncQueueCapacity = queueCapacity;
+        this.asyncBackPressure = backPressure;
+        this.asyncSampleRate = sampleRate;
+        return self();
+    }
+
+    /**
+     * Limits the number of bytes kept per body, bigger bodies are truncated and flagged in the entry comment.
+     * On the client side the response body is captured while the application reads it, the exchange is completed
+     * when the response entity is fully read or closed, at the latest when the feature is closed.
+     *
+     * @param maxCaptureSize max number of bytes captured per request or response body.
+     * @return this feature.
+     */
+    public T withMaxCaptureSize(final int maxCaptureSize) {
+        if (maxCaptureSize < 0) {
+            throw new IllegalArgumentException("maxCaptureSize must be positive");
+        }
+        this.maxCaptureSize = maxCaptureSize;
+        return self();
+    }
+
+    /**
+     * Bodies bigger than this threshold are moved to a temporary file while captured and memory mapped,
+     * it keeps the heap usage flat for big uploads/downloads. Files are deleted once the exchange is processed.
+     * On the client side it means once the response entity is fully read or closed, or once the feature is closed.
+     *
+     * @param spillThreshold number of bytes after which a body is written to disk.
+     * @return this feature.
+     */
+    public T withSpillThreshold(final int spillThreshold) {
+        if (spillThreshold < 0) {
+            throw new IllegalArgumentException("spillThreshold must be positive");
+        }
+        this.spillThreshold = spillThreshold;
+        return self();
+    }
+
+    /**
+     * Selects the exchanges to capture, requests rejected by the policy are not wrapped at all.
+     *
+     * @param capturePolicy the policy, see {@link CapturePolicies}.
+     * @return this feature.
+     */
+    public T withCapturePolicy(final CapturePolicy capturePolicy) {
+        this.capturePolicy = capturePolicy;
+        return self();
+    }
+
+    /**
+     * Records the latency of each exchange in a histogram per endpoint (method and path template),
+     * it enables to get percentiles per endpoint through {@link #getLatencyStatistics()}.
+     *
+     * @return this feature.
+     */
+    public T withLatencyStatistics() {
+        this.latencyStatistics = new LatencyStatistics();
+        return self();
+    }
+
+    /**
+     * Passes the raw exchanges to the consumer instead of converting them to HAR entries,
+     * typically used with a {@link BinaryCaptureWriter} to keep the capture cost minimal.
+     * The HAR sink of this feature is then not used.
+     *
+     * @param exchangeSink the raw exchange listener.
+     * @return this feature.
+     */
+    public T withExchangeSink(final Consumer<Exchange> exchangeSink) {
+        this.exchangeSink = exchangeSink;
+        return self();
+    }
+
+    /**
+     * Shares identical bodies and headers between entries and optionally collapses identical exchanges,
+     * collapsing is only supported for in memory captures.
+     *
+     * @param deduplicator the deduplication stage applied to each entry before the sink.
+     * @return this feature.
+     */
+    public T withDeduplication(final EntryDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+        return self();
+    }
+
+    /**
+     * Writes the bodies bigger than the store threshold in a content addressed directory,
+     * entries only reference them so the heap usage does not depend on the payload sizes.
+     *
+     * @param bodyStore the store to write big bodies to.
+     * @return this feature.
+     */
+    public T withBodyStore(final BodyStore bodyStore) {
+        this.bodyStore = bodyStore;
+        return self();
+    }
+
+    /**
+     * Counts the captured exchanges, bytes and entries and times the conversion and the writing of the entries,
+     * see {@link #getMetrics()}. Combined with {@link #withLatencyStatistics()} metrics also expose the endpoint latencies.
+     *
+     * @return this feature.
+     */
+    public T withMetrics() {
+        this.metrics = new CaptureMetrics();
+        return self();
+    }
+
+    /**
+     * Same as {@link #withMetrics()} but the metrics are also registered as a MBean, it is unregistered on {@link #close()}.
+     *
+     * @param jmxName the name of the MBean.
+     * @return this feature.
+     */
+    public T withMetrics(final String jmxName) {
+        withMetrics();
+        metrics.register(jmxName);
+        return self();
+    }
+
+    /**
+     * @return the consumer the filters pass the captured exchanges to, it applies the configured pipeline.
+     */
+    protected Consumer<Exchange> createCaptureConsumer() {
+        final CaptureMetrics metrics = this.metrics;
+        final Consumer<Exchange> delegate;
+        if (exchangeSink != null) {
+            final Consumer<Exchange> rawSink = exchangeSink;
+            delegate = metrics == null ?
+                    rawSink :
+                    exchange -> {
+                        final long start = System.nanoTime();
+                        rawSink.accept(exchange);
+                        metrics.onWritten(System.nanoTime() - start);
+                    };
+        } else {
+            final ExchangeConverter converter = new ExchangeConverter(providers, bodyStore);
+            final EntryDeduplicator dedup = deduplicator;
+            if (dedup != null && dedup.isCollapse() && har.getLog().getEntries() == null) {
+                throw new IllegalStateException("Collapsing identical exchanges requires an in memory capture, "
+                        + "the streaming sink would never see the hit counts");
+            }
+            delegate = metrics == null && dedup == null ?
+                    exchange -> sink.accept(converter.apply(exchange)) :
+                    exchange -> {
+                        final long start = metrics == null ? 0 : System.nanoTime();
+                        Har.Entry entry = converter.apply(exchange);
+                        if (dedup != null) {
+                            entry = dedup.apply(entry);
+                        }
+                        final long converted = metrics == null ? 0 : System.nanoTime();
+                        if (metrics != null) {
+                            metrics.onConverted(converted - start);
+                        }
+                        if (entry == null) {
+                            if (metrics != null) {
+                                metrics.onCollapsed();
+                            }
+                            return;
+                        }
+                        sink.accept(entry);
+                        if (metrics != null) {
+                            metrics.onWritten(System.nanoTime() - converted);
+                        }
+                    };
+        }
+        final LatencyStatistics statistics = latencyStatistics;
+        final Consumer<Exchange> processor = exchange -> {
+            try {
+                if (statistics != null) {
+                    statistics.record(exchange.getMethod(), exchange.getUri().getPath(), exchange.getEndNanos() - exchange.getStartNanos());
+                }
+                delegate.accept(exchange);
+            } finally { // spilled bodies
+                exchange.release();
+            }
+        };
+        final Consumer<Exchange> capture;
+        if (asyncThreads > 0) {
+            synchronized (this) {
+                if (asyncCapture == null) {
+                    asyncCapture = new AsyncCapture(asyncThreads, asyncQueueCapacity, asyncBackPressure, asyncSampleRate, processor);
+                }
+            }
+            capture = asyncCapture;
+        } else {
+            capture = processor;
+        }
+        if (metrics == null) {
+            return capture;
+        }
+        metrics.bind(asyncCapture, exchangeSink == null ? har.getLog().getEntries() : null, statistics);
+        return exchange -> {
+            metrics.onExchange(exchange);
+            capture.accept(exchange);
+        };
+    }
+
+    /**
+     * Waits for pending asynchronous conversions (no-op in synchronous mode) and unregisters the metrics MBean.
+     */
+    @Override
+    public void close() {
+        final AsyncCapture capture = asyncCapture;
+        if (capture != null) {
+            capture.close();
+        }
+        if (metrics != null) {
+            metrics.unregister();
+        }
+    }
+
+    @SuppressWarnings("unchecked") // T is the concrete feature type by construction
+    private T self() {
+        return (T) this;
+    }
+}
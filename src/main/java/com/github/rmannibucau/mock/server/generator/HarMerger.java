@@ -0,0 +1,453 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.Comparator.comparing;
+import static java.util.Comparator.naturalOrder;
+import static java.util.Comparator.nullsFirst;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.json.bind.Jsonb;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Merges several HAR files (typically one per test shard) in a single one.
+ *
+ * Files are parsed in parallel by batches with {@link HarReader} so only a few entries per file are in memory,
+ * entries are then merged (k-way merge) by {@code startedDateTime}. A capture is written in completion order
+ * so entries of a file are reordered in a sliding window ({@link #withReorderWindow(int)}) before being merged.
+ *
+ * Entries can also be grouped by endpoint (method and path template), groups are then spilled to temporary files,
+ * only the writers of the most recently used groups are kept open ({@link #withMaxOpenGroups(int)}).
+ * Identical request/response pairs can be dropped with an {@link EntryDeduplicator}, since the output is streamed
+ * the first entry of a collapsed pair is already written when its hit count changes so it does not contain it.
+ */
+public class HarMerger {
+    private static final Logger LOGGER = Logger.getLogger(HarMerger.class.getName());
+    private static final Object END = new Object();
+    private static final Comparator<Har.Entry> BY_DATE = comparing(Har.Entry::getStartedDateTime, nullsFirst(naturalOrder()));
+
+    private final HarReader reader = new HarReader();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 256;
+    private int reorderWindow = 256;
+    private int maxOpenGroups = 64;
+    private Order order = Order.STARTED_DATE_TIME;
+    private EntryDeduplicator deduplicator;
+    private Har.Log log = new Har.Log();
+
+    /**
+     * @param parallelism number of threads parsing the files, default to the number of processors.
+     * @return this merger.
+     */
+    public HarMerger withParallelism(final int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @param batchSize number of entries parsed at once per file, it bounds the memory used per file.
+     * @return this merger.
+     */
+    public HarMerger withBatchSize(final int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param reorderWindow number of entries of a file sorted before being merged, 1 means files are already sorted.
+     * @return this merger.
+     */
+    public HarMerger withReorderWindow(final int reorderWindow) {
+        if (reorderWindow <= 0) {
+            throw new IllegalArgumentException("reorderWindow must be positive");
+        }
+        this.reorderWindow = reorderWindow;
+        return this;
+    }
+
+    /**
+     * @param maxOpenGroups max number of endpoint group files open at the same time with {@link Order#ENDPOINT},
+     *                      the least recently used one is closed and reopened in append mode when needed.
+     * @return this merger.
+     */
+    public HarMerger withMaxOpenGroups(final int maxOpenGroups) {
+        if (maxOpenGroups <= 0) {
+            throw new IllegalArgumentException("maxOpenGroups must be positive");
+        }
+        this.maxOpenGroups = maxOpenGroups;
+        return this;
+    }
+
+    public HarMerger withOrder(final Order order) {
+        this.order = order;
+        return this;
+    }
+
+    /**
+     * @param deduplicator deduplication stage applied to the merged entries, use a collapsing one to drop identical pairs.
+     * @return this merger.
+     */
+    public HarMerger withDeduplication(final EntryDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+        return this;
+    }
+
+    /**
+     * @param log the log attributes (creator, browser, ...) of the merged HAR.
+     * @return this merger.
+     */
+    public HarMerger withLog(final Har.Log log) {
+        this.log = log;
+        return this;
+    }
+
+    /**
+     * @param inputs the HAR files to merge.
+     * @param output the merged HAR.
+     * @return the number of written entries.
+     */
+    public long merge(final Collection<Path> inputs, final Path output) {
+        try (final HarStreamWriter writer = HarStreamWriter.open(output, log)) {
+            return merge(inputs, writer);
+        }
+    }
+
+    /**
+     * @param inputs the HAR files to merge.
+     * @param sink   the merged entries listener.
+     * @return the number of merged entries.
+     */
+    public long merge(final Collection<Path> inputs, final Consumer<Har.Entry> sink) {
+        final AtomicInteger threadCounter = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, inputs.size())), task -> {
+            final Thread thread = new Thread(task, "har-merger-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final List<Source> sources = new ArrayList<>(inputs.size());
+        try {
+            for (final Path input : inputs) {
+                final Source source = new Source(input, executor);
+                sources.add(source);
+                source.schedule(); // all files start to be parsed in parallel
+            }
+            if (order == Order.ENDPOINT) {
+                try (final EndpointGroups groups = new EndpointGroups(maxOpenGroups)) {
+                    merge(sources, groups);
+                    return groups.flushTo(sink);
+                }
+            }
+            return merge(sources, sink);
+        } finally {
+            sources.forEach(it -> it.closed = true);
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sources.forEach(Source::close);
+        }
+    }
+
+    private long merge(final List<Source> sources, final Consumer<Har.Entry> sink) {
+        final PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, sources.size()), comparing(it -> it.entry, BY_DATE));
+        for (final Source source : sources) {
+            final Har.Entry entry = source.next();
+            if (entry != null) {
+                heads.add(new Head(source, entry));
+            }
+        }
+        final EntryDeduplicator dedup = deduplicator;
+        long count = 0;
+        while (!heads.isEmpty()) {
+            final Head head = heads.poll();
+            final Har.Entry entry = dedup == null ? head.entry : dedup.apply(head.entry);
+            if (entry != null) {
+                sink.accept(entry);
+                count++;
+            }
+            final Har.Entry next = head.source.next();
+            if (next != null) {
+                head.entry = next;
+                heads.add(head);
+            }
+        }
+        return count;
+    }
+
+    public enum Order {
+        /**
+         * Entries sorted by start date.
+         */
+        STARTED_DATE_TIME,
+
+        /**
+         * Entries grouped by endpoint (method and path template, groups are sorted), sorted by start date in a group.
+         */
+        ENDPOINT
+    }
+
+    private static class Head {
+        private final Source source;
+        private Har.Entry entry;
+
+        private Head(final Source source, final Har.Entry entry) {
+            this.source = source;
+            this.entry = entry;
+        }
+    }
+
+    // parsing is done by batches in the executor, the merging thread consumes the buffer
+    private class Source {
+        private final Path path;
+        private final ExecutorService executor;
+        private final Stream<Har.Entry> stream;
+        private final Iterator<Har.Entry> iterator;
+        private final BlockingQueue<Object> buffer = new LinkedBlockingQueue<>();
+        private final PriorityQueue<Har.Entry> window = new PriorityQueue<>(BY_DATE);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean exhausted;
+        private volatile boolean closed;
+        private boolean ended;
+
+        private Source(final Path path, final ExecutorService executor) {
+            this.path = path;
+            this.executor = executor;
+            this.stream = reader.entries(path);
+            this.iterator = stream.iterator();
+        }
+
+        private Har.Entry next() {
+            while (!ended && window.size() < reorderWindow) {
+                final Har.Entry entry = take();
+                if (entry != null) {
+                    window.add(entry);
+                }
+            }
+            return window.poll();
+        }
+
+        private Har.Entry take() {
+            try {
+                Object item;
+                do {
+                    schedule();
+                    item = buffer.poll(10, TimeUnit.MILLISECONDS);
+                } while (item == null);
+                if (item == END) {
+                    ended = true;
+                    return null;
+                }
+                if (RuntimeException.class.isInstance(item)) {
+                    ended = true;
+                    throw new IllegalStateException("Can't read '" + path + "'", RuntimeException.class.cast(item));
+                }
+                return Har.Entry.class.cast(item);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void schedule() {
+            if (!exhausted && buffer.size() < batchSize && scheduled.compareAndSet(false, true)) {
+                executor.execute(this::fill);
+            }
+        }
+
+        private void fill() {
+            try {
+                for (int i = 0; i < batchSize && !closed; i++) {
+                    if (!iterator.hasNext()) {
+                        exhausted = true;
+                        buffer.add(END);
+                        return;
+                    }
+                    buffer.add(iterator.next());
+                }
+            } catch (final RuntimeException re) {
+                exhausted = true;
+                buffer.add(re);
+            } finally {
+                scheduled.set(false);
+            }
+        }
+
+        private void close() {
+            try {
+                stream.close();
+            } catch (final RuntimeException re) {
+                LOGGER.log(Level.FINE, re.getMessage(), re);
+            }
+        }
+    }
+
+    // one temporary file per endpoint, entries are one JSON object per line
+    private static class EndpointGroups implements Consumer<Har.Entry>, AutoCloseable {
+        private final Jsonb jsonb = HarWriter.compactJsonb();
+        private final Map<String, Group> groups = new TreeMap<>();
+        private final Map<Group, Group> openGroups;
+        private final Path directory;
+
+        private EndpointGroups(final int maxOpenGroups) {
+            try {
+                directory = Files.createTempDirectory("har-merger-");
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            openGroups = new LinkedHashMap<Group, Group>(16, .75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Group, Group> eldest) {
+                    if (size() <= maxOpenGroups) {
+                        return false;
+                    }
+                    try {
+                        eldest.getKey().close();
+                    } catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public void accept(final Har.Entry entry) {
+            final String key = endpoint(entry);
+            Group group = groups.get(key);
+            try {
+                if (group == null) {
+                    group = new Group(directory.resolve(String.format("group-%06d.json", groups.size())));
+                    groups.put(key, group);
+                }
+                if (group.writer == null) {
+                    group.writer = Files.newBufferedWriter(group.file, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                openGroups.put(group, group);
+                jsonb.toJson(entry, new HarWriter.NoCloseWriter(group.writer));
+                group.writer.write('\n');
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private long flushTo(final Consumer<Har.Entry> sink) {
+            long count = 0;
+            for (final Group group : groups.values()) {
+                try {
+                    group.close();
+                    try (final BufferedReader lines = Files.newBufferedReader(group.file, StandardCharsets.UTF_8)) {
+                        String line;
+                        while ((line = lines.readLine()) != null) {
+                            sink.accept(jsonb.fromJson(line, Har.Entry.class));
+                            count++;
+                        }
+                    }
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            openGroups.clear();
+            return count;
+        }
+
+        @Override
+        public void close() {
+            for (final Group group : groups.values()) {
+                try {
+                    group.close();
+                    Files.deleteIfExists(group.file);
+                } catch (final IOException e) {
+                    LOGGER.log(Level.WARNING, e.getMessage(), e);
+                }
+            }
+            try {
+                Files.deleteIfExists(directory);
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARNING, e.getMessage(), e);
+            }
+        }
+
+        private static String endpoint(final Har.Entry entry) {
+            final Har.Request request = entry.getRequest();
+            if (request == null || request.getUrl() == null) {
+                return "";
+            }
+            String path;
+            try {
+                path = URI.create(request.getUrl()).getRawPath();
+            } catch (final IllegalArgumentException iae) {
+                path = request.getUrl();
+            }
+            return request.getMethod() + ' ' + PathTemplates.toTemplate(path);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Group {
+        private final Path file;
+        private Writer writer; // null when not open
+
+        private void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+}
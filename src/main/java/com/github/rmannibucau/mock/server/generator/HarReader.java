@@ -0,0 +1,428 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.spi.JsonProvider;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+/**
+ * Reads HAR entries one at a time with a JSON-P streaming parser, only the current entry is in memory
+ * so it can process captures bigger than the heap.
+ *
+ * Files can optionally be read through a memory mapping which avoids copying the file content in the java heap.
+ * Returned streams must be closed to release the underlying file.
+ *
+ * Instances are thread safe and meant to be reused.
+ */
+public class HarReader {
+    private final JsonParserFactory parserFactory = JsonProvider.provider().createParserFactory(Collections.emptyMap());
+
+    public Stream<Har.Entry> entries(final Path path) {
+        return entries(path, false);
+    }
+
+    public Stream<Har.Entry> entries(final Path path, final boolean memoryMapped) {
+        try {
+            return entries(memoryMapped ?
+                    new MappedInputStream(path) : new BufferedInputStream(Files.newInputStream(path), 64 * 1024));
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param stream the HAR stream, it is closed with the returned stream.
+     * @return the entries of the HAR.
+     */
+    public Stream<Har.Entry> entries(final InputStream stream) {
+        final JsonParser parser = parserFactory.createParser(stream);
+        final EntryIterator iterator;
+        try {
+            iterator = new EntryIterator(parser);
+        } catch (final RuntimeException re) {
+            parser.close();
+            throw re;
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(parser::close);
+    }
+
+    /**
+     * Loads a whole HAR in memory.
+     *
+     * @param path the HAR file.
+     * @return the HAR instance.
+     */
+    public Har read(final Path path) {
+        final Har har = new Har();
+        try (final Stream<Har.Entry> entries = entries(path)) {
+            har.getLog().setEntries(entries.collect(toList()));
+        }
+        return har;
+    }
+
+    private static class EntryIterator implements Iterator<Har.Entry> {
+        private final JsonParser parser;
+        private Har.Entry next;
+        private boolean done;
+
+        private EntryIterator(final JsonParser parser) {
+            this.parser = parser;
+            if (!moveToEntries()) {
+                done = true;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (done) {
+                return false;
+            }
+            final JsonParser.Event event = parser.next();
+            if (event == JsonParser.Event.END_ARRAY) {
+                done = true;
+                return false;
+            }
+            if (event != JsonParser.Event.START_OBJECT) {
+                throw new IllegalStateException("Expected an entry object, got " + event);
+            }
+            next = toEntry(parser.getObject());
+            return true;
+        }
+
+        @Override
+        public Har.Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Har.Entry entry = next;
+            next = null;
+            return entry;
+        }
+
+        // positions the parser on the START_ARRAY of log.entries
+        private boolean moveToEntries() {
+            if (!parser.hasNext() || parser.next() != JsonParser.Event.START_OBJECT) {
+                throw new IllegalStateException("Invalid HAR, expected an object");
+            }
+            if (!moveToKey("log") || parser.next() != JsonParser.Event.START_OBJECT) {
+                return false;
+            }
+            return moveToKey("entries") && parser.next() == JsonParser.Event.START_ARRAY;
+        }
+
+        private boolean moveToKey(final String key) {
+            while (parser.hasNext()) {
+                final JsonParser.Event event = parser.next();
+                if (event == JsonParser.Event.END_OBJECT) {
+                    return false;
+                }
+                if (event == JsonParser.Event.KEY_NAME) {
+                    if (key.equals(parser.getString())) {
+                        return true;
+                    }
+                    skipValue();
+                }
+            }
+            return false;
+        }
+
+        private void skipValue() {
+            switch (parser.next()) {
+                case START_OBJECT:
+                    parser.skipObject();
+                    break;
+                case START_ARRAY:
+                    parser.skipArray();
+                    break;
+                default: // scalar, already consumed
+            }
+        }
+    }
+
+    static Har.Entry toEntry(final JsonObject json) {
+        final Har.Entry entry = new Har.Entry();
+        date(json, "startedDateTime", entry::setStartedDateTime);
+        string(json, "pageref", entry::setPageref);
+        entry.setTime(number(json, "time", 0));
+        object(json, "request", HarReader::toRequest, entry::setRequest);
+        object(json, "response", HarReader::toResponse, entry::setResponse);
+        object(json, "cache", HarReader::toCache, entry::setCache);
+        object(json, "timings", HarReader::toTimings, entry::setTimings);
+        string(json, "serverIPAddress", entry::setServerIPAddress);
+        string(json, "connection", entry::setConnection);
+        string(json, "comment", entry::setComment);
+        return entry;
+    }
+
+    private static Har.Request toRequest(final JsonObject json) {
+        final Har.Request request = new Har.Request();
+        string(json, "method", request::setMethod);
+        string(json, "url", request::setUrl);
+        string(json, "httpVersion", request::setHttpVersion);
+        array(json, "cookies", HarReader::toCookie, request::setCookies);
+        array(json, "headers", HarReader::toHeader, request::setHeaders);
+        array(json, "queryString", HarReader::toQuery, request::setQueryString);
+        object(json, "postData", HarReader::toPostData, request::setPostData);
+        request.setHeaderSize(number(json, "headerSize", -1));
+        request.setBodySize(number(json, "bodySize", 0));
+        string(json, "comment", request::setComment);
+        return request;
+    }
+
+    private static Har.Response toResponse(final JsonObject json) {
+        final Har.Response response = new Har.Response();
+        response.setStatus((int) number(json, "status", 200));
+        string(json, "statusText", response::setStatusText);
+        string(json, "httpVersion", response::setHttpVersion);
+        array(json, "cookies", HarReader::toCookie, response::setCookies);
+        array(json, "headers", HarReader::toHeader, response::setHeaders);
+        object(json, "content", HarReader::toContent, response::setContent);
+        string(json, "redirectURL", response::setRedirectURL);
+        response.setHeadersSize(number(json, "headersSize", 0));
+        response.setBodySize(number(json, "bodySize", 0));
+        string(json, "comment", response::setComment);
+        return response;
+    }
+
+    private static Har.Cookie toCookie(final JsonObject json) {
+        final Har.Cookie cookie = new Har.Cookie();
+        date(json, "expires", cookie::setExpires);
+        string(json, "name", cookie::setName);
+        string(json, "value", cookie::setValue);
+        string(json, "path", cookie::setPath);
+        string(json, "domain", cookie::setDomain);
+        cookie.setHttpOnly(json.getBoolean("httpOnly", false));
+        cookie.setSecure(json.getBoolean("secure", false));
+        string(json, "comment", cookie::setComment);
+        return cookie;
+    }
+
+    private static Har.Header toHeader(final JsonObject json) {
+        final Har.Header header = new Har.Header();
+        string(json, "name", header::setName);
+        string(json, "value", header::setValue);
+        string(json, "comment", header::setComment);
+        return header;
+    }
+
+    private static Har.Query toQuery(final JsonObject json) {
+        final Har.Query query = new Har.Query();
+        string(json, "name", query::setName);
+        string(json, "value", query::setValue);
+        string(json, "comment", query::setComment);
+        return query;
+    }
+
+    private static Har.PostData toPostData(final JsonObject json) {
+        final Har.PostData postData = new Har.PostData();
+        string(json, "mimeType", postData::setMimeType);
+        array(json, "params", HarReader::toParam, postData::setParams);
+        string(json, "text", postData::setText);
+        string(json, "comment", postData::setComment);
+        string(json, "_encoding", postData::setEncoding);
+        string(json, "_file", postData::setFile);
+        return postData;
+    }
+
+    private static Har.Param toParam(final JsonObject json) {
+        final Har.Param param = new Har.Param();
+        string(json, "name", param::setName);
+        string(json, "value", param::setValue);
+        string(json, "fileName", param::setFileName);
+        string(json, "contentType", param::setContentType);
+        string(json, "comment", param::setComment);
+        return param;
+    }
+
+    private static Har.Content toContent(final JsonObject json) {
+        final Har.Content content = new Har.Content();
+        content.setSize(number(json, "size", 0));
+        content.setCompression((int) number(json, "compression", 0));
+        string(json, "mimeType", content::setMimeType);
+        string(json, "text", content::setText);
+        string(json, "encoding", content::setEncoding);
+        string(json, "comment", content::setComment);
+        string(json, "_file", content::setFile);
+        return content;
+    }
+
+    private static Har.Cache toCache(final JsonObject json) {
+        final Har.Cache cache = new Har.Cache();
+        object(json, "beforeRequest", it -> toCacheRequest(it, Har.BeforeRequest::new), cache::setBeforeRequest);
+        object(json, "afterRequest", it -> toCacheRequest(it, Har.AfterRequest::new), cache::setAfterRequest);
+        string(json, "comment", cache::setComment);
+        return cache;
+    }
+
+    private static <T extends Har.CacheRequest> T toCacheRequest(final JsonObject json, final Supplier<T> factory) {
+        final T request = factory.get();
+        date(json, "expires", request::setExpires);
+        date(json, "lastAccess", request::setLastAccess);
+        string(json, "eTag", request::setETag);
+        request.setHitCount((int) number(json, "hitCount", 0));
+        string(json, "comment", request::setComment);
+        return request;
+    }
+
+    private static Har.Timings toTimings(final JsonObject json) {
+        final Har.Timings timings = new Har.Timings();
+        timings.setBlocked(number(json, "blocked", -1));
+        timings.setDns(number(json, "dns", -1));
+        timings.setConnect(number(json, "connect", -1));
+        timings.setSend(number(json, "send", 0));
+        timings.setWait(number(json, "wait", 0));
+        timings.setReceive(number(json, "receive", 0));
+        timings.setSsl(number(json, "ssl", -1));
+        string(json, "comment", timings::setComment);
+        return timings;
+    }
+
+    private static void string(final JsonObject json, final String key, final Consumer<String> setter) {
+        final JsonValue value = json.get(key);
+        if (value != null && value.getValueType() == JsonValue.ValueType.STRING) {
+            setter.accept(JsonString.class.cast(value).getString());
+        }
+    }
+
+    private static long number(final JsonObject json, final String key, final long defaultValue) {
+        final JsonValue value = json.get(key);
+        return value != null && value.getValueType() == JsonValue.ValueType.NUMBER ?
+                JsonNumber.class.cast(value).longValue() : defaultValue;
+    }
+
+    private static void date(final JsonObject json, final String key, final Consumer<ZonedDateTime> setter) {
+        string(json, key, value -> setter.accept(ZonedDateTime.parse(value)));
+    }
+
+    private static <T> void object(final JsonObject json, final String key, final Function<JsonObject, T> mapper,
+                                   final Consumer<T> setter) {
+        final JsonValue value = json.get(key);
+        if (value != null && value.getValueType() == JsonValue.ValueType.OBJECT) {
+            setter.accept(mapper.apply(value.asJsonObject()));
+        }
+    }
+
+    private static <T> void array(final JsonObject json, final String key, final Function<JsonObject, T> mapper,
+                                  final Consumer<Collection<T>> setter) {
+        final JsonValue value = json.get(key);
+        if (value != null && value.getValueType() == JsonValue.ValueType.ARRAY) {
+            final JsonArray array = value.asJsonArray();
+            final Collection<T> out = new ArrayList<>(array.size());
+            for (final JsonValue item : array) {
+                if (item.getValueType() == JsonValue.ValueType.OBJECT) {
+                    out.add(mapper.apply(item.asJsonObject()));
+                }
+            }
+            setter.accept(out);
+        }
+    }
+
+    // sequentially maps the file by windows since a mapping is limited to 2GB
+    private static class MappedInputStream extends InputStream {
+        private static final long WINDOW = 256 * 1024 * 1024;
+
+        private final FileChannel channel;
+        private final long size;
+        private long position;
+        private MappedByteBuffer buffer;
+
+        private MappedInputStream(final Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            final int length = Math.min(len, buffer.remaining());
+            buffer.get(b, off, length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return buffer == null ? 0 : buffer.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            buffer = null;
+            channel.close();
+        }
+
+        private boolean ensureAvailable() throws IOException {
+            if (buffer != null && buffer.hasRemaining()) {
+                return true;
+            }
+            if (position >= size) {
+                return false;
+            }
+            final long length = Math.min(WINDOW, size - position);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+            return true;
+        }
+    }
+}
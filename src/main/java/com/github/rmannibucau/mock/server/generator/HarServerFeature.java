@@ -0,0 +1,290 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static javax.ws.rs.RuntimeType.SERVER;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.annotation.Priority;
+import javax.ws.rs.ConstrainedTo;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Server mirror of {@link HarClientFeature}: captures the incoming requests and the responses of the application.
+ * Bodies are copied while the application reads the request and while the response is written so there is no extra pass.
+ *
+ * Timings are from the server point of view: {@code send} is the time to read the request,
+ * {@code wait} the application processing and {@code receive} the time to write the response.
+ */
+@ConstrainedTo(SERVER)
+public class HarServerFeature extends HarCaptureFeature<HarServerFeature> implements Feature {
+    /**
+     * Captures entries in memory, they are available through {@link #getHar()}.
+     */
+    public HarServerFeature() {
+        super();
+    }
+
+    /**
+     * Captures entries in streaming mode, see {@link HarClientFeature#HarClientFeature(Consumer)}.
+     *
+     * @param sink the entry listener.
+     */
+    public HarServerFeature(final Consumer<Har.Entry> sink) {
+        super(sink);
+    }
+
+    @Override
+    public boolean configure(final FeatureContext context) {
+        context.register(new CaptureFilter(createCaptureConsumer(), getMaxCaptureSize(), getCapturePolicy(), getSpillThreshold()));
+        return true;
+    }
+
+    @PreMatching
+    @Priority(Priorities.ENTITY_CODER)
+    public static class CaptureFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+        private static final String STATE = CaptureFilter.class.getName() + ".state";
+
+        private final Consumer<Exchange> exchanges;
+        private final int maxCaptureSize;
+        private final CapturePolicy policy;
+        private final int spillThreshold;
+        private final BufferPool pool = new BufferPool(8192, 256);
+
+        public CaptureFilter(final Consumer<Exchange> exchanges, final int maxCaptureSize, final CapturePolicy policy,
+                             final int spillThreshold) {
+            this.exchanges = exchanges;
+            this.maxCaptureSize = maxCaptureSize;
+            this.policy = policy;
+            this.spillThreshold = spillThreshold;
+        }
+
+        @Override
+        public void filter(final ContainerRequestContext requestContext) {
+            if (!policy.accept(requestContext.getMethod(), requestContext.getUriInfo().getRequestUri())) {
+                return;
+            }
+            final State state = new State(System.currentTimeMillis(), System.nanoTime());
+            if (requestContext.getLength() > 0 || requestContext.getHeaderString("Transfer-Encoding") != null) {
+                state.requestBody = new CaptureBuffer(pool, maxCaptureSize, spillThreshold);
+                requestContext.setEntityStream(new CapturingInputStream(requestContext.getEntityStream(), state));
+            }
+            requestContext.setProperty(STATE, state);
+        }
+
+        @Override
+        public void filter(final ContainerRequestContext requestContext, final ContainerResponseContext responseContext) {
+            final long responseNanos = System.nanoTime();
+            final State state = State.class.cast(requestContext.getProperty(STATE));
+            if (state == null) { // not selected by the policy
+                return;
+            }
+            requestContext.removeProperty(STATE);
+            if (!policy.accept(requestContext.getMethod(), requestContext.getUriInfo().getRequestUri(), responseContext.getStatus())) {
+                if (state.requestBody != null) {
+                    state.requestBody.release();
+                }
+                return;
+            }
+
+            final Exchange exchange = new Exchange();
+            exchange.setStartedDateTime(state.startedDateTime);
+            exchange.setStartNanos(state.start);
+            exchange.setSentNanos(state.received > 0 ? state.received : state.start);
+            exchange.setResponseNanos(responseNanos);
+            exchange.setMethod(requestContext.getMethod());
+            exchange.setUri(requestContext.getUriInfo().getRequestUri());
+            exchange.setRequestMediaType(requestContext.getMediaType());
+            exchange.setRequestHeaders(copyHeaders(requestContext.getHeaders()));
+            exchange.setRequestCookies(requestContext.getCookies());
+            if (state.requestBody != null) {
+                exchange.setRequestBody(state.requestBody.toBody());
+                exchange.setRequestBodySize(state.requestBody.getTotal());
+                state.requestBody.release();
+            }
+
+            exchange.setStatus(responseContext.getStatus());
+            exchange.setResponseMediaType(responseContext.getMediaType());
+            exchange.setResponseHeaders(new LinkedHashMap<>(responseContext.getStringHeaders()));
+            exchange.setResponseCookies(responseContext.getCookies());
+            if (responseContext.hasEntity() && !"HEAD".equalsIgnoreCase(requestContext.getMethod())) {
+                // the stream carries the exchange to aroundWriteTo, request properties are not visible there (CXF)
+                // and async responses are written from the thread resuming them
+                responseContext.setEntityStream(new CapturingOutputStream(responseContext.getEntityStream(),
+                        new CaptureBuffer(pool, maxCaptureSize, spillThreshold), exchange, this::complete));
+            } else {
+                exchange.setEndNanos(responseNanos);
+                complete(exchange);
+            }
+        }
+
+        @Override
+        public void aroundWriteTo(final WriterInterceptorContext context) throws IOException {
+            final OutputStream stream = context.getOutputStream();
+            if (!CapturingOutputStream.class.isInstance(stream)) {
+                context.proceed();
+                return;
+            }
+            try {
+                context.proceed();
+            } finally {
+                CapturingOutputStream.class.cast(stream).complete();
+            }
+        }
+
+        private void complete(final Exchange exchange) {
+            policy.onCaptured(exchange.getMethod(), exchange.getUri(),
+                    Math.max(0, exchange.getRequestBodySize()) + Math.max(0, exchange.getResponseBodySize()));
+            exchanges.accept(exchange);
+        }
+
+        private Map<String, List<Object>> copyHeaders(final Map<String, List<String>> headers) {
+            final Map<String, List<Object>> copy = new LinkedHashMap<>(headers.size() * 4 / 3 + 1);
+            headers.forEach((key, values) -> copy.put(key, new ArrayList<>(values)));
+            return copy;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class State {
+        private final long startedDateTime;
+        private final long start;
+        private CaptureBuffer requestBody;
+        private volatile long received;
+    }
+
+    // copies the request bytes while the application reads them
+    @RequiredArgsConstructor
+    private static class CapturingInputStream extends InputStream {
+        private final InputStream delegate;
+        private final State state;
+
+        @Override
+        public int read() throws IOException {
+            final int read = delegate.read();
+            if (read >= 0) {
+                state.requestBody.write(read);
+            } else {
+                onEnd();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = delegate.read(b, off, len);
+            if (read > 0) {
+                state.requestBody.write(b, off, read);
+            } else if (read < 0) {
+                onEnd();
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return delegate.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                delegate.close();
+            } finally {
+                onEnd();
+            }
+        }
+
+        private void onEnd() {
+            if (state.received == 0) {
+                state.received = System.nanoTime();
+            }
+        }
+    }
+
+    // copies the response bytes while they are written, completed after the entity is written or when closed
+    @RequiredArgsConstructor
+    private static class CapturingOutputStream extends OutputStream {
+        private final OutputStream delegate;
+        private final CaptureBuffer buffer;
+        private final Exchange exchange;
+        private final Consumer<Exchange> listener;
+        private boolean completed;
+
+        @Override
+        public void write(final int b) throws IOException {
+            delegate.write(b);
+            if (!completed) {
+                buffer.write(b);
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            delegate.write(b, off, len);
+            if (!completed) {
+                buffer.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                delegate.close();
+            } finally {
+                complete();
+            }
+        }
+
+        private void complete() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            exchange.setEndNanos(System.nanoTime());
+            exchange.setResponseBody(buffer.toBody());
+            exchange.setResponseBodySize(buffer.getTotal());
+            buffer.release();
+            listener.accept(exchange);
+        }
+    }
+}
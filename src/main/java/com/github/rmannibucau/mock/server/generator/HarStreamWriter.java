@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import javax.json.bind.Jsonb;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+/**
+ * Writes a HAR incrementally: the log header is written when the writer is created,
+ * each entry is serialized as soon as it is accepted and the closing brackets are written on close.
+ * It enables to capture an unbounded number of entries with a flat memory usage.
+ *
+ * Log attributes are written in lexicographic order like {@link HarWriter} does, entries being
+ * written between {@code creator} and {@code pages}.
+ */
+public class HarStreamWriter implements Consumer<Har.Entry>, AutoCloseable {
+    private final Writer writer;
+    private final Har.Log log;
+    private final Jsonb jsonb;
+    private boolean first = true;
+    private boolean closed;
+
+    public HarStreamWriter(final Writer writer) {
+        this(writer, new Har.Log());
+    }
+
+    public HarStreamWriter(final Writer writer, final Har.Log log) {
+        this.writer = writer;
+        this.log = log;
+        this.jsonb = HarWriter.compactJsonb();
+        try {
+            writeHeader();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static HarStreamWriter open(final Path output) {
+        return open(output, new Har.Log());
+    }
+
+    public static HarStreamWriter open(final Path output, final Har.Log log) {
+        if (output.getParent() != null && !Files.exists(output.getParent())) {
+            try {
+                Files.createDirectories(output.getParent());
+            } catch (final IOException e) {
+                throw new IllegalStateException("Can't create '" + output + "'");
+            }
+        }
+        try {
+            return new HarStreamWriter(Files.newBufferedWriter(output), log);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void accept(final Har.Entry entry) {
+        if (closed) {
+            throw new IllegalStateException("Writer already closed");
+        }
+        try {
+            if (first) {
+                first = false;
+            } else {
+                writer.write(',');
+            }
+            jsonb.toJson(entry, new HarWriter.NoCloseWriter(writer));
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized void flush() {
+        try {
+            writer.flush();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (final Writer w = writer) {
+            w.write(']');
+            if (log.getPages() != null) {
+                w.write(",\"pages\":");
+                w.write(jsonb.toJson(log.getPages()));
+            }
+            if (log.getVersion() != null) {
+                w.write(",\"version\":");
+                writeString(w, log.getVersion());
+            }
+            w.write("}}");
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        writer.write("{\"log\":{");
+        if (log.getBrowser() != null) {
+            writer.write("\"browser\":");
+            writer.write(jsonb.toJson(log.getBrowser()));
+            writer.write(',');
+        }
+        if (log.getComment() != null) {
+            writer.write("\"comment\":");
+            writeString(writer, log.getComment());
+            writer.write(',');
+        }
+        if (log.getCreator() != null) {
+            writer.write("\"creator\":");
+            writer.write(jsonb.toJson(log.getCreator()));
+            writer.write(',');
+        }
+        writer.write("\"entries\":[");
+    }
+
+    private static void writeString(final Writer writer, final String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -15,10 +15,19 @@
  */
 package com.github.rmannibucau.mock.server.generator;
 
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Base64;
 
 import javax.json.bind.Jsonb;
 import javax.json.bind.JsonbBuilder;
@@ -27,19 +36,80 @@ import javax.json.bind.config.PropertyOrderStrategy;
 
 import com.github.rmannibucau.mock.server.generator.model.Har;
 
+/**
+ * Serializes a {@link Har}, properties are sorted lexicographically.
+ *
+ * The JSON-B instances are created once per JVM and shared by all writers so instances are cheap
+ * and thread safe, don't hesitate to create one per dump.
+ *
+ * Bodies stored in a {@link BodyStore} are written as references ({@code _file}) unless
+ * {@link #withInlinedBodies(BodyStore)} is used.
+ */
 public class HarWriter {
+    private final boolean pretty;
+    private BodyStore inlinedBodies;
+
+    public HarWriter() {
+        this(true);
+    }
+
+    /**
+     * @param pretty should the output be formatted, a compact output is smaller and faster to write.
+     */
+    public HarWriter(final boolean pretty) {
+        this.pretty = pretty;
+    }
+
+    /**
+     * Replaces the body references by their Base64 content, it is streamed from the store to the output
+     * so bodies are never loaded in memory.
+     *
+     * @param store the store the captured bodies were written to.
+     * @return this writer.
+     */
+    public HarWriter withInlinedBodies(final BodyStore store) {
+        this.inlinedBodies = store;
+        return this;
+    }
+
     public String toString(final Har har) {
-        try (final Jsonb jsonb = JsonbBuilder.create(new JsonbConfig()
-                .withFormatting(true)
-                .withPropertyOrderStrategy(PropertyOrderStrategy.LEXICOGRAPHICAL))) {
-            return jsonb.toJson(har);
-        } catch (final Exception e) {
+        final StringWriter writer = new StringWriter();
+        write(writer, har);
+        return writer.toString();
+    }
+
+    /**
+     * @param writer the target, it is flushed but not closed.
+     * @param har    the HAR to serialize.
+     */
+    public void write(final Writer writer, final Har har) {
+        jsonb().toJson(har, new NoCloseWriter(inlinedBodies == null ? writer : new InliningWriter(writer, inlinedBodies)));
+        try {
+            writer.flush();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param stream the target, the HAR is written in UTF-8 and the stream is flushed but not closed.
+     * @param har    the HAR to serialize.
+     */
+    public void write(final OutputStream stream, final Har har) {
+        if (inlinedBodies != null) { // the inlining works on chars
+            write(new BufferedWriter(new OutputStreamWriter(new NoCloseOutputStream(stream), StandardCharsets.UTF_8)), har);
+            return;
+        }
+        jsonb().toJson(har, new NoCloseOutputStream(stream));
+        try {
+            stream.flush();
+        } catch (final IOException e) {
             throw new IllegalStateException(e);
         }
     }
 
     public void write(final Path output, final Har har) {
-        if (!Files.exists(output.getParent())) {
+        if (output.getParent() != null && !Files.exists(output.getParent())) {
             try {
                 Files.createDirectories(output.getParent());
             } catch (IOException e) {
@@ -47,9 +117,170 @@ public class HarWriter {
             }
         }
         try (final Writer writer = Files.newBufferedWriter(output)) {
-            writer.write(toString(har));
+            write(writer, har);
         } catch (final IOException e) {
             throw new IllegalStateException(e);
         }
     }
+
+    private Jsonb jsonb() {
+        return pretty ? Pretty.JSONB : Compact.JSONB;
+    }
+
+    /**
+     * @return the shared compact JSON-B instance, it must not be closed.
+     */
+    static Jsonb compactJsonb() {
+        return Compact.JSONB;
+    }
+
+    private static Jsonb createJsonb(final boolean pretty) {
+        return JsonbBuilder.create(new JsonbConfig()
+                .withFormatting(pretty)
+                .withPropertyOrderStrategy(PropertyOrderStrategy.LEXICOGRAPHICAL));
+    }
+
+    // lazy holders, a compact only usage does not create the formatting instance and conversely
+    private static class Pretty {
+        private static final Jsonb JSONB = createJsonb(true);
+    }
+
+    private static class Compact {
+        private static final Jsonb JSONB = createJsonb(false);
+    }
+
+    // jsonb implementations can close the target they serialize to, it belongs to the caller
+    static class NoCloseWriter extends FilterWriter {
+        NoCloseWriter(final Writer delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void close() {
+            // no-op
+        }
+    }
+
+    // replaces "_file":"<reference>" by "text":"<base64 of the stored body>" while the JSON is written,
+    // an unescaped quote can't be in a string value so it can't match a body content
+    private static class InliningWriter extends FilterWriter {
+        private static final char[] MARKER = "\"_file\":\"".toCharArray();
+
+        private final BodyStore store;
+        private final StringBuilder reference = new StringBuilder(64);
+        private int matched;
+        private boolean inReference;
+
+        private InliningWriter(final Writer delegate, final BodyStore store) {
+            super(delegate);
+            this.store = store;
+        }
+
+        @Override
+        public void write(final int c) throws IOException {
+            if (inReference) {
+                if (c == '"') {
+                    inReference = false;
+                    inline();
+                } else {
+                    reference.append((char) c);
+                }
+                return;
+            }
+            if (c == MARKER[matched]) {
+                matched++;
+                if (matched == MARKER.length) {
+                    matched = 0;
+                    inReference = true;
+                    reference.setLength(0);
+                }
+                return;
+            }
+            if (matched > 0) { // partial match, release it
+                out.write(MARKER, 0, matched);
+                matched = 0;
+                if (c == MARKER[0]) {
+                    matched = 1;
+                    return;
+                }
+            }
+            out.write(c);
+        }
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) throws IOException {
+            int start = off;
+            final int end = off + len;
+            for (int i = off; i < end; i++) { // pass through the chunks which can't be a reference
+                if (matched == 0 && !inReference && cbuf[i] != MARKER[0]) {
+                    continue;
+                }
+                if (i > start) {
+                    out.write(cbuf, start, i - start);
+                }
+                write(cbuf[i]);
+                start = i + 1;
+            }
+            if (end > start) {
+                out.write(cbuf, start, end - start);
+            }
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) throws IOException {
+            write(str.toCharArray(), off, len);
+        }
+
+        private void inline() throws IOException {
+            out.write("\"text\":\"");
+            final byte[] buffer = new byte[8192];
+            try (final InputStream body = store.open(reference.toString());
+                 final OutputStream base64 = Base64.getEncoder().wrap(new AsciiOutputStream(out))) {
+                int read;
+                while ((read = body.read(buffer)) >= 0) {
+                    base64.write(buffer, 0, read);
+                }
+            }
+            out.write('"');
+        }
+    }
+
+    // base64 output is ascii so bytes are chars, closing it does not close the writer
+    private static class AsciiOutputStream extends OutputStream {
+        private final Writer writer;
+
+        private AsciiOutputStream(final Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            writer.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            final char[] chars = new char[len];
+            for (int i = 0; i < len; i++) {
+                chars[i] = (char) b[off + i];
+            }
+            writer.write(chars, 0, len);
+        }
+    }
+
+    private static class NoCloseOutputStream extends FilterOutputStream {
+        private NoCloseOutputStream(final OutputStream delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            // no-op
+        }
+    }
 }
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.Collections.unmodifiableMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latency histograms (in nanoseconds) per endpoint, an endpoint being the method and the path template,
+ * for instance {@code GET /users/{id}}.
+ */
+public class LatencyStatistics {
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    public void record(final String method, final String path, final long durationNanos) {
+        final String key = method + ' ' + PathTemplates.toTemplate(path);
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        histogram.record(durationNanos);
+    }
+
+    public LatencyHistogram get(final String method, final String pathTemplate) {
+        return histograms.get(method + ' ' + pathTemplate);
+    }
+
+    public Map<String, LatencyHistogram> getHistograms() {
+        return unmodifiableMap(histograms);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+/**
+ * Infers a path template from a concrete path replacing numeric segments by {@code {id}}
+ * and UUID segments by {@code {uuid}}, for instance {@code /users/123/orders} becomes {@code /users/{id}/orders}.
+ */
+public final class PathTemplates {
+    public static final String ID = "{id}";
+    public static final String UUID = "{uuid}";
+
+    private PathTemplates() {
+        // no-op
+    }
+
+    public static String toTemplate(final String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        StringBuilder builder = null;
+        int start = 0;
+        final int length = path.length();
+        while (start <= length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            final String replacement = isNumeric(path, start, end) ? ID : (isUuid(path, start, end) ? UUID : null);
+            if (replacement != null) {
+                if (builder == null) {
+                    builder = new StringBuilder(length).append(path, 0, start);
+                }
+                builder.append(replacement);
+            } else if (builder != null) {
+                builder.append(path, start, end);
+            }
+            if (end < length && builder != null) {
+                builder.append('/');
+            }
+            start = end + 1;
+        }
+        return builder == null ? path : builder.toString();
+    }
+
+    public static boolean isTemplateSegment(final String segment) {
+        return ID.equals(segment) || UUID.equals(segment);
+    }
+
+    public static boolean isVariableSegment(final String segment) {
+        return isNumeric(segment, 0, segment.length()) || isUuid(segment, 0, segment.length());
+    }
+
+    public static boolean isUuid(final String value) {
+        return isUuid(value, 0, value.length());
+    }
+
+    private static boolean isNumeric(final String path, final int start, final int end) {
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            final char c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 8-4-4-4-12 hexadecimal digits
+    private static boolean isUuid(final String path, final int start, final int end) {
+        if (end - start != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            final char c = path.charAt(start + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
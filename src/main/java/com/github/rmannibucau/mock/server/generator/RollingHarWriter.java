@@ -0,0 +1,312 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Writes entries to a sequence of HAR files (segments), a new segment is started after a number of entries,
+ * a size or a duration. Each segment is a valid HAR.
+ *
+ * The segment in progress is named {@code <prefix>-<sequence>.har.part} and renamed to {@code <prefix>-<sequence>.har}
+ * once complete so tooling can pick finished segments while the capture continues.
+ * Finished segments can be gzipped and the number of kept segments bounded, it is done in a background thread.
+ */
+public class RollingHarWriter implements Consumer<Har.Entry>, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(RollingHarWriter.class.getName());
+
+    private final Path directory;
+    private final String prefix;
+    private final Har.Log log;
+    private final Pattern segmentPattern;
+    private final ScheduledThreadPoolExecutor executor;
+
+    private long maxEntries = Long.MAX_VALUE;
+    private long maxBytes = Long.MAX_VALUE;
+    private long maxDuration = Long.MAX_VALUE; // ms
+    private boolean compress;
+    private int retention = Integer.MAX_VALUE;
+
+    private int sequence;
+    private Segment current;
+    private boolean closed;
+
+    public RollingHarWriter(final Path directory, final String prefix) {
+        this(directory, prefix, new Har.Log());
+    }
+
+    /**
+     * @param directory where to write the segments.
+     * @param prefix    segment file name prefix.
+     * @param log       the log attributes (creator, browser, ...) written in each segment.
+     */
+    public RollingHarWriter(final Path directory, final String prefix, final Har.Log log) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.log = log;
+        this.segmentPattern = Pattern.compile(Pattern.quote(prefix) + "-(\\d+)\\.har(\\.gz)?");
+        try {
+            Files.createDirectories(directory);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Can't create '" + directory + "'", e);
+        }
+        this.sequence = listSegments().stream()
+                .map(it -> segmentPattern.matcher(it.getFileName().toString()))
+                .filter(Matcher::matches)
+                .mapToInt(it -> Integer.parseInt(it.group(1)))
+                .max()
+                .orElse(0); // continue the numbering of a previous run
+        this.executor = new ScheduledThreadPoolExecutor(1, task -> {
+            final Thread thread = new Thread(task, "har-rolling-" + prefix);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param maxEntries number of entries after which a new segment is started.
+     * @return this writer.
+     */
+    public RollingHarWriter withMaxEntries(final long maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * @param maxBytes size after which a new segment is started, it is checked after each entry so a segment
+     *                 can exceed it by its last entry and the HAR closing. The segment is flushed after each entry
+     *                 when it is set.
+     * @return this writer.
+     */
+    public RollingHarWriter withMaxBytes(final long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * @param maxDuration duration after which a new segment is started, even if no entry is written.
+     * @return this writer.
+     */
+    public RollingHarWriter withMaxDuration(final Duration maxDuration) {
+        this.maxDuration = maxDuration.toMillis();
+        final long period = Math.max(1, Math.min(1000, this.maxDuration / 2));
+        executor.scheduleWithFixedDelay(this::rollIfExpired, period, period, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * @param compress should finished segments be gzipped.
+     * @return this writer.
+     */
+    public RollingHarWriter withCompression(final boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    /**
+     * @param retention max number of finished segments to keep, older ones are deleted.
+     * @return this writer.
+     */
+    public RollingHarWriter withRetention(final int retention) {
+        this.retention = retention;
+        return this;
+    }
+
+    @Override
+    public synchronized void accept(final Har.Entry entry) {
+        if (closed) {
+            throw new IllegalStateException("Writer already closed");
+        }
+        if (current == null) {
+            current = openSegment();
+        }
+        current.writer.accept(entry);
+        current.entries++;
+        if (maxBytes != Long.MAX_VALUE) { // the writer buffers would hide the last entries from the count
+            current.writer.flush();
+        }
+        if (current.entries >= maxEntries || current.output.count >= maxBytes) {
+            roll();
+        }
+    }
+
+    /**
+     * Finishes the current segment and waits for the pending compressions.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            roll();
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void rollIfExpired() {
+        if (current != null && System.currentTimeMillis() - current.openedAt >= maxDuration) {
+            try {
+                roll();
+            } catch (final RuntimeException re) { // don't cancel the periodic check
+                LOGGER.log(Level.SEVERE, re.getMessage(), re);
+            }
+        }
+    }
+
+    private void roll() {
+        final Segment segment = current;
+        if (segment == null) {
+            return;
+        }
+        current = null;
+        segment.writer.close();
+        final Path finished = directory.resolve(segment.name);
+        try {
+            move(segment.path, finished);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        executor.execute(() -> {
+            try {
+                if (compress) {
+                    compress(finished);
+                }
+                applyRetention();
+            } catch (final IOException | RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Can't finish '" + finished + "': " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private Segment openSegment() {
+        final String name = String.format("%s-%06d.har", prefix, ++sequence);
+        final Path path = directory.resolve(name + ".part");
+        try {
+            final CountingOutputStream output = new CountingOutputStream(Files.newOutputStream(path));
+            final HarStreamWriter writer = new HarStreamWriter(
+                    new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)), log);
+            return new Segment(name, path, output, writer, System.currentTimeMillis());
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void compress(final Path segment) throws IOException {
+        final Path part = segment.resolveSibling(segment.getFileName() + ".gz.part");
+        try (final InputStream in = Files.newInputStream(segment);
+             final OutputStream out = new GZIPOutputStream(Files.newOutputStream(part), 64 * 1024)) {
+            final byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        move(part, segment.resolveSibling(segment.getFileName() + ".gz"));
+        Files.delete(segment);
+    }
+
+    private void applyRetention() throws IOException {
+        if (retention == Integer.MAX_VALUE) {
+            return;
+        }
+        final List<Path> segments = listSegments(); // sorted by name so by sequence
+        for (int i = 0; i < segments.size() - retention; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    private List<Path> listSegments() {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.filter(it -> segmentPattern.matcher(it.getFileName().toString()).matches())
+                    .sorted()
+                    .collect(toList());
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void move(final Path from, final Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Segment {
+        private final String name;
+        private final Path path;
+        private final CountingOutputStream output;
+        private final HarStreamWriter writer;
+        private final long openedAt;
+        private long entries;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(final OutputStream delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.contract;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+import javax.json.JsonBuilderFactory;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbConfig;
+import javax.json.bind.config.PropertyOrderStrategy;
+import javax.json.spi.JsonProvider;
+
+import com.github.rmannibucau.mock.server.generator.HarReader;
+import com.github.rmannibucau.mock.server.generator.PathTemplates;
+import com.github.rmannibucau.mock.server.generator.model.Contract;
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+/**
+ * Folds the entries of a capture in a compact contract: one route per method and path template
+ * (see {@link PathTemplates}) with its query parameters, content types, statuses and the JSON schemas
+ * inferred from the request and response bodies. The first entry of each route is kept as its representative,
+ * {@link #representatives(Contract)} gives them back as a small HAR.
+ *
+ * Entries are read by batches, each batch is folded with a fork-join pool and merged in the capture order so the result
+ * does not depend on the parallelism. Only a bounded number of batches are in flight and the schemas only keep
+ * the structure of the bodies so the memory depends on the number of routes, not on the size of the capture.
+ */
+public class ContractExtractor {
+    private static final int LEAF_SIZE = 64;
+
+    private final HarReader reader = new HarReader();
+    private final JsonProvider provider = JsonProvider.provider();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 1024;
+    private int maxDepth = 32;
+    private int maxProperties = 256;
+
+    /**
+     * @param parallelism size of the fork-join pool folding the entries, default to the number of processors.
+     * @return this extractor.
+     */
+    public ContractExtractor withParallelism(final int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @param batchSize number of entries read before being folded, default to 1024.
+     * @return this extractor.
+     */
+    public ContractExtractor withBatchSize(final int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param maxDepth max depth of the inferred schemas, deeper values are not described. Default to 32.
+     * @return this extractor.
+     */
+    public ContractExtractor withMaxDepth(final int maxDepth) {
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("maxDepth must be positive");
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * @param maxProperties max number of properties (and query parameters) tracked per object. Default to 256.
+     * @return this extractor.
+     */
+    public ContractExtractor withMaxProperties(final int maxProperties) {
+        if (maxProperties <= 0) {
+            throw new IllegalArgumentException("maxProperties must be positive");
+        }
+        this.maxProperties = maxProperties;
+        return this;
+    }
+
+    public Contract extract(final Path har) {
+        try (final Stream<Har.Entry> entries = reader.entries(har)) {
+            return extract(entries);
+        }
+    }
+
+    public Contract extract(final Stream<Har.Entry> entries) {
+        final RouteAccumulator.Limits limits = new RouteAccumulator.Limits(
+                provider.createParserFactory(Collections.emptyMap()), maxDepth, maxProperties);
+        final Map<String, RouteAccumulator> routes = new HashMap<>();
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            final Deque<ForkJoinTask<Map<String, RouteAccumulator>>> pending = new ArrayDeque<>();
+            final Iterator<Har.Entry> iterator = entries.iterator();
+            long index = 0;
+            while (iterator.hasNext()) {
+                final List<Har.Entry> batch = new ArrayList<>(batchSize);
+                while (batch.size() < batchSize && iterator.hasNext()) {
+                    batch.add(iterator.next());
+                }
+                pending.add(pool.submit(new Fold(batch, index, 0, batch.size(), limits)));
+                index += batch.size();
+                if (pending.size() > parallelism) {
+                    merge(routes, pending.poll().join(), limits);
+                }
+            }
+            while (!pending.isEmpty()) {
+                merge(routes, pending.poll().join(), limits);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        final JsonBuilderFactory factory = provider.createBuilderFactory(Collections.emptyMap());
+        final Collection<Contract.Route> out = new ArrayList<>(routes.size());
+        new TreeMap<>(routes).values().forEach(route -> out.add(route.toRoute(factory)));
+        final Contract contract = new Contract();
+        contract.setRoutes(out);
+        return contract;
+    }
+
+    /**
+     * @param contract an extracted contract.
+     * @return a HAR with the representative entry of each route.
+     */
+    public Har representatives(final Contract contract) {
+        final List<Har.Entry> entries = new ArrayList<>(contract.getRoutes().size());
+        for (final Contract.Route route : contract.getRoutes()) {
+            if (route.getRepresentative() != null) {
+                entries.add(route.getRepresentative());
+            }
+        }
+        final Har har = new Har();
+        har.getLog().setEntries(entries);
+        return har;
+    }
+
+    public void write(final Contract contract, final Path output) {
+        try {
+            if (output.getParent() != null) {
+                Files.createDirectories(output.getParent());
+            }
+            try (final Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                Pretty.JSONB.toJson(contract, writer);
+            }
+        } catch (final IOException | RuntimeException e) {
+            throw new IllegalStateException("Can't write '" + output + "'", e);
+        }
+    }
+
+    private static void merge(final Map<String, RouteAccumulator> routes, final Map<String, RouteAccumulator> batch,
+                              final RouteAccumulator.Limits limits) {
+        batch.forEach((key, route) -> {
+            final RouteAccumulator existing = routes.get(key);
+            if (existing == null) {
+                routes.put(key, route);
+            } else {
+                existing.merge(route, limits);
+            }
+        });
+    }
+
+    // lazy holder, the extraction alone does not need it
+    private static class Pretty {
+        private static final Jsonb JSONB = JsonbBuilder.create(new JsonbConfig()
+                .withFormatting(true)
+                .withPropertyOrderStrategy(PropertyOrderStrategy.LEXICOGRAPHICAL));
+    }
+
+    private static class Fold extends RecursiveTask<Map<String, RouteAccumulator>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Har.Entry> entries;
+        private final long firstIndex;
+        private final int from;
+        private final int to;
+        private final RouteAccumulator.Limits limits;
+
+        private Fold(final List<Har.Entry> entries, final long firstIndex, final int from, final int to,
+                     final RouteAccumulator.Limits limits) {
+            this.entries = entries;
+            this.firstIndex = firstIndex;
+            this.from = from;
+            this.to = to;
+            this.limits = limits;
+        }
+
+        @Override
+        protected Map<String, RouteAccumulator> compute() {
+            if (to - from > LEAF_SIZE) {
+                final int middle = (from + to) >>> 1;
+                final Fold left = new Fold(entries, firstIndex, from, middle, limits);
+                left.fork();
+                final Map<String, RouteAccumulator> right = new Fold(entries, firstIndex, middle, to, limits).compute();
+                final Map<String, RouteAccumulator> result = left.join();
+                merge(result, right, limits);
+                return result;
+            }
+            final Map<String, RouteAccumulator> routes = new HashMap<>();
+            for (int i = from; i < to; i++) {
+                final Har.Entry entry = entries.get(i);
+                if (entry.getRequest() == null || entry.getRequest().getMethod() == null || entry.getRequest().getUrl() == null) {
+                    continue;
+                }
+                final String method = entry.getRequest().getMethod().toUpperCase(Locale.ROOT);
+                final String path = PathTemplates.toTemplate(pathOf(entry.getRequest().getUrl()));
+                routes.computeIfAbsent(path + ' ' + method, k -> new RouteAccumulator(method, path))
+                        .accept(firstIndex + i, entry, limits);
+            }
+            return routes;
+        }
+    }
+
+    // without scheme/authority/query, not decoded: templates are computed on the raw path like the capture does
+    private static String pathOf(final String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : url.indexOf('/', start + 3);
+        if (start < 0) {
+            return "/";
+        }
+        int end = url.indexOf('?', start);
+        if (end < 0) {
+            end = url.indexOf('#', start);
+        }
+        return url.substring(start, end < 0 ? url.length() : end);
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.contract;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonParser;
+
+import com.github.rmannibucau.mock.server.generator.PathTemplates;
+
+/**
+ * Incrementally inferred JSON schema: parser events of each observed document are folded in the shape
+ * without building the document, and two shapes can be merged (parallel folding).
+ *
+ * The memory is bounded by the structure of the documents and not by their size or count:
+ * only types, property names and presence counts are kept, the number of properties per object
+ * and the depth are capped.
+ */
+class JsonShape {
+    private static final int NULL = 1;
+    private static final int BOOLEAN = 1 << 1;
+    private static final int INTEGER = 1 << 2;
+    private static final int NUMBER = 1 << 3;
+    private static final int STRING = 1 << 4;
+    private static final int ARRAY = 1 << 5;
+    private static final int OBJECT = 1 << 6;
+
+    private static final String UUID = "uuid";
+    private static final String DATE_TIME = "date-time";
+    private static final String MIXED = "";
+
+    private int types;
+    private long objects;
+    private Map<String, Property> properties;
+    private boolean truncated;
+    private JsonShape items;
+    private String format; // null until a string is seen, MIXED if not all strings have the same format
+
+    /**
+     * Folds the value starting at the current event of the parser.
+     *
+     * @param parser        the parser positioned on the first event of the value.
+     * @param event         the current event.
+     * @param depth         current depth, nested values deeper than {@code maxDepth} only record their type.
+     * @param maxDepth      max depth of the shape.
+     * @param maxProperties max number of properties tracked per object.
+     */
+    void accept(final JsonParser parser, final JsonParser.Event event, final int depth, final int maxDepth, final int maxProperties) {
+        switch (event) {
+            case START_OBJECT:
+                types |= OBJECT;
+                objects++;
+                if (depth >= maxDepth) {
+                    truncated = true;
+                    parser.skipObject();
+                    return;
+                }
+                if (properties == null) {
+                    properties = new LinkedHashMap<>();
+                }
+                JsonParser.Event next;
+                while ((next = parser.next()) != JsonParser.Event.END_OBJECT) {
+                    final String name = parser.getString(); // KEY_NAME
+                    final JsonParser.Event value = parser.next();
+                    Property property = properties.get(name);
+                    if (property == null) {
+                        if (properties.size() >= maxProperties) {
+                            truncated = true;
+                            skip(parser, value);
+                            continue;
+                        }
+                        property = new Property();
+                        properties.put(name, property);
+                    }
+                    property.presence++;
+                    property.shape.accept(parser, value, depth + 1, maxDepth, maxProperties);
+                }
+                break;
+            case START_ARRAY:
+                types |= ARRAY;
+                if (depth >= maxDepth) {
+                    truncated = true;
+                    parser.skipArray();
+                    return;
+                }
+                if (items == null) {
+                    items = new JsonShape();
+                }
+                JsonParser.Event item;
+                while ((item = parser.next()) != JsonParser.Event.END_ARRAY) {
+                    items.accept(parser, item, depth + 1, maxDepth, maxProperties);
+                }
+                break;
+            case VALUE_STRING:
+                types |= STRING;
+                onFormat(formatOf(parser.getString()));
+                break;
+            case VALUE_NUMBER:
+                types |= parser.isIntegralNumber() ? INTEGER : NUMBER;
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                types |= BOOLEAN;
+                break;
+            case VALUE_NULL:
+                types |= NULL;
+                break;
+            default:
+                throw new IllegalStateException("Unexpected event: " + event);
+        }
+    }
+
+    void merge(final JsonShape other, final int maxProperties) {
+        types |= other.types;
+        objects += other.objects;
+        truncated |= other.truncated;
+        if (other.format != null) {
+            onFormat(other.format);
+        }
+        if (other.items != null) {
+            if (items == null) {
+                items = other.items;
+            } else {
+                items.merge(other.items, maxProperties);
+            }
+        }
+        if (other.properties != null) {
+            if (properties == null) {
+                properties = new LinkedHashMap<>();
+            }
+            for (final Map.Entry<String, Property> entry : other.properties.entrySet()) {
+                final Property property = properties.get(entry.getKey());
+                if (property != null) {
+                    property.presence += entry.getValue().presence;
+                    property.shape.merge(entry.getValue().shape, maxProperties);
+                } else if (properties.size() < maxProperties) {
+                    properties.put(entry.getKey(), entry.getValue());
+                } else {
+                    truncated = true;
+                }
+            }
+        }
+    }
+
+    JsonObject toSchema(final JsonBuilderFactory factory) {
+        final JsonObjectBuilder schema = factory.createObjectBuilder();
+        int effectiveTypes = types;
+        if ((effectiveTypes & NUMBER) != 0) { // integers are numbers
+            effectiveTypes &= ~INTEGER;
+        }
+        if (Integer.bitCount(effectiveTypes) == 1) {
+            schema.add("type", typeName(effectiveTypes));
+        } else if (effectiveTypes != 0) {
+            final JsonArrayBuilder names = factory.createArrayBuilder();
+            for (int type = 1; type <= OBJECT; type <<= 1) {
+                if ((effectiveTypes & type) != 0) {
+                    names.add(typeName(type));
+                }
+            }
+            schema.add("type", names);
+        }
+        if (format != null && !MIXED.equals(format)) {
+            schema.add("format", format);
+        }
+        if (items != null && items.types != 0) {
+            schema.add("items", items.toSchema(factory));
+        }
+        if (properties != null && !properties.isEmpty()) {
+            final JsonObjectBuilder props = factory.createObjectBuilder();
+            final JsonArrayBuilder required = factory.createArrayBuilder();
+            boolean hasRequired = false;
+            for (final Map.Entry<String, Property> entry : properties.entrySet()) {
+                props.add(entry.getKey(), entry.getValue().shape.toSchema(factory));
+                if (entry.getValue().presence == objects) {
+                    required.add(entry.getKey());
+                    hasRequired = true;
+                }
+            }
+            schema.add("properties", props);
+            if (hasRequired) {
+                schema.add("required", required);
+            }
+        }
+        if (truncated) { // some properties or nested values were not tracked
+            schema.add("x-truncated", true);
+        }
+        return schema.build();
+    }
+
+    private void onFormat(final String valueFormat) {
+        if (format == null) {
+            format = valueFormat;
+        } else if (!format.equals(valueFormat)) {
+            format = MIXED;
+        }
+    }
+
+    private static String formatOf(final String value) {
+        if (PathTemplates.isUuid(value)) {
+            return UUID;
+        }
+        // yyyy-MM-ddTHH:mm:ss + optional fraction and zone, only the shape is checked
+        if (value.length() >= 19 && value.charAt(4) == '-' && value.charAt(7) == '-'
+                && (value.charAt(10) == 'T' || value.charAt(10) == 't') && value.charAt(13) == ':' && value.charAt(16) == ':'
+                && Character.isDigit(value.charAt(0)) && Character.isDigit(value.charAt(18))) {
+            return DATE_TIME;
+        }
+        return MIXED;
+    }
+
+    private static String typeName(final int type) {
+        switch (type) {
+            case NULL:
+                return "null";
+            case BOOLEAN:
+                return "boolean";
+            case INTEGER:
+                return "integer";
+            case NUMBER:
+                return "number";
+            case STRING:
+                return "string";
+            case ARRAY:
+                return "array";
+            default:
+                return "object";
+        }
+    }
+
+    private static void skip(final JsonParser parser, final JsonParser.Event event) {
+        if (event == JsonParser.Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (event == JsonParser.Event.START_ARRAY) {
+            parser.skipArray();
+        }
+    }
+
+    private static class Property {
+        private final JsonShape shape = new JsonShape();
+        private long presence;
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.contract;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+
+import com.github.rmannibucau.mock.server.generator.model.Contract;
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+// what is known of a route (method and path template) after having seen some entries
+class RouteAccumulator {
+    private static final Logger LOGGER = Logger.getLogger(RouteAccumulator.class.getName());
+
+    private final String method;
+    private final String path;
+    private long count;
+    private long representativeIndex = Long.MAX_VALUE;
+    private Har.Entry representative;
+    private final Map<String, Long> queryParameters = new LinkedHashMap<>();
+    private final PayloadAccumulator request = new PayloadAccumulator();
+    private final Map<Integer, PayloadAccumulator> responses = new TreeMap<>();
+
+    RouteAccumulator(final String method, final String path) {
+        this.method = method;
+        this.path = path;
+    }
+
+    void accept(final long index, final Har.Entry entry, final Limits limits) {
+        count++;
+        if (index < representativeIndex) {
+            representativeIndex = index;
+            representative = entry;
+        }
+        final Har.Request harRequest = entry.getRequest();
+        if (harRequest.getQueryString() != null) {
+            for (final Har.Query query : harRequest.getQueryString()) {
+                if (queryParameters.containsKey(query.getName()) || queryParameters.size() < limits.maxProperties) {
+                    queryParameters.merge(query.getName(), 1L, Long::sum);
+                }
+            }
+        }
+        final Har.PostData postData = harRequest.getPostData();
+        if (postData != null && postData.getText() != null && !postData.getText().isEmpty()) {
+            request.accept(postData.getMimeType(), postData.getText(), postData.getEncoding(), limits);
+        }
+        final Har.Response response = entry.getResponse();
+        if (response != null) {
+            final PayloadAccumulator payload = responses.computeIfAbsent(response.getStatus(), k -> new PayloadAccumulator());
+            final Har.Content content = response.getContent();
+            if (content == null || content.getText() == null || content.getText().isEmpty()) {
+                payload.count++;
+            } else {
+                payload.accept(content.getMimeType(), content.getText(), content.getEncoding(), limits);
+            }
+        }
+    }
+
+    void merge(final RouteAccumulator other, final Limits limits) {
+        count += other.count;
+        if (other.representativeIndex < representativeIndex) {
+            representativeIndex = other.representativeIndex;
+            representative = other.representative;
+        }
+        other.queryParameters.forEach((name, presence) -> {
+            if (queryParameters.containsKey(name) || queryParameters.size() < limits.maxProperties) {
+                queryParameters.merge(name, presence, Long::sum);
+            }
+        });
+        request.merge(other.request, limits);
+        other.responses.forEach((status, payload) -> {
+            final PayloadAccumulator existing = responses.get(status);
+            if (existing == null) {
+                responses.put(status, payload);
+            } else {
+                existing.merge(payload, limits);
+            }
+        });
+    }
+
+    Contract.Route toRoute(final JsonBuilderFactory factory) {
+        final Contract.Route route = new Contract.Route();
+        route.setMethod(method);
+        route.setPath(path);
+        route.setCount(count);
+        route.setRepresentative(representative);
+        if (!queryParameters.isEmpty()) {
+            final List<Contract.Parameter> parameters = new ArrayList<>(queryParameters.size());
+            queryParameters.forEach((name, presence) -> {
+                final Contract.Parameter parameter = new Contract.Parameter();
+                parameter.setName(name);
+                parameter.setRequired(presence == count);
+                parameters.add(parameter);
+            });
+            route.setQueryParameters(parameters);
+        }
+        if (request.count > 0) {
+            route.setRequest(request.toPayload(factory));
+        }
+        final Map<String, Contract.Payload> payloads = new LinkedHashMap<>();
+        responses.forEach((status, payload) -> payloads.put(Integer.toString(status), payload.toPayload(factory)));
+        route.setResponses(payloads);
+        return route;
+    }
+
+    static class Limits {
+        private final JsonParserFactory parserFactory;
+        private final int maxDepth;
+        private final int maxProperties;
+
+        Limits(final JsonParserFactory parserFactory, final int maxDepth, final int maxProperties) {
+            this.parserFactory = parserFactory;
+            this.maxDepth = maxDepth;
+            this.maxProperties = maxProperties;
+        }
+    }
+
+    private static class PayloadAccumulator {
+        private long count;
+        private final Collection<String> contentTypes = new TreeSet<>();
+        private JsonShape shape;
+
+        private void accept(final String mimeType, final String text, final String encoding, final Limits limits) {
+            count++;
+            if (mimeType == null || mimeType.isEmpty()) {
+                return;
+            }
+            if (contentTypes.size() < limits.maxProperties) {
+                contentTypes.add(mimeType);
+            }
+            if (!mimeType.toLowerCase(Locale.ROOT).contains("json")) {
+                return;
+            }
+            final JsonShape document = new JsonShape();
+            try (final JsonParser parser = "base64".equalsIgnoreCase(encoding) ?
+                    limits.parserFactory.createParser(new ByteArrayInputStream(Base64.getDecoder().decode(text))) :
+                    limits.parserFactory.createParser(new StringReader(text))) {
+                if (!parser.hasNext()) {
+                    return;
+                }
+                document.accept(parser, parser.next(), 0, limits.maxDepth, limits.maxProperties);
+            } catch (final JsonException | IllegalArgumentException e) { // truncated or invalid body
+                LOGGER.log(Level.FINEST, e.getMessage(), e);
+                return;
+            }
+            if (shape == null) {
+                shape = document;
+            } else {
+                shape.merge(document, limits.maxProperties);
+            }
+        }
+
+        private void merge(final PayloadAccumulator other, final Limits limits) {
+            count += other.count;
+            for (final String contentType : other.contentTypes) {
+                if (contentTypes.size() >= limits.maxProperties) {
+                    break;
+                }
+                contentTypes.add(contentType);
+            }
+            if (other.shape != null) {
+                if (shape == null) {
+                    shape = other.shape;
+                } else {
+                    shape.merge(other.shape, limits.maxProperties);
+                }
+            }
+        }
+
+        private Contract.Payload toPayload(final JsonBuilderFactory factory) {
+            final Contract.Payload payload = new Contract.Payload();
+            payload.setCount(count);
+            if (!contentTypes.isEmpty()) {
+                payload.setContentTypes(new ArrayList<>(contentTypes));
+            }
+            if (shape != null) {
+                payload.setSchema(shape.toSchema(factory));
+            }
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.diff;
+
+import java.util.List;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Result of a {@link HarDiff}: the counters cover all the entries, only the first differences
+ * (see {@link HarDiff#withMaxReported(int)}) are detailed.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class DiffReport {
+    public enum Kind {
+        CHANGED, ADDED, REMOVED
+    }
+
+    private final long expectedEntries;
+    private final long actualEntries;
+    private final long unchanged;
+    private final long changed;
+    private final long added;
+    private final long removed;
+    private final List<Difference> differences;
+
+    public boolean hasDifferences() {
+        return changed + added + removed > 0;
+    }
+
+    public String summary() {
+        final StringBuilder out = new StringBuilder()
+                .append("expected: ").append(expectedEntries).append(" entries, actual: ").append(actualEntries).append(" entries")
+                .append(System.lineSeparator())
+                .append("unchanged: ").append(unchanged).append(", changed: ").append(changed)
+                .append(", added: ").append(added).append(", removed: ").append(removed).append(System.lineSeparator());
+        for (final Difference difference : differences) {
+            out.append(difference.kind).append(' ').append(difference.method).append(' ').append(difference.url);
+            if (difference.expectedIndex >= 0) {
+                out.append(" expected #").append(difference.expectedIndex);
+            }
+            if (difference.actualIndex >= 0) {
+                out.append(" actual #").append(difference.actualIndex);
+            }
+            out.append(System.lineSeparator());
+            for (final String detail : difference.details) {
+                out.append("  ").append(detail).append(System.lineSeparator());
+            }
+        }
+        final long notDetailed = changed + added + removed - differences.size();
+        if (notDetailed > 0) {
+            out.append("... ").append(notDetailed).append(" more differences").append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    @Getter
+    @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+    public static class Difference {
+        private final Kind kind;
+        private final String method;
+        private final String url;
+        private final int expectedIndex; // index of the entry in the expected HAR, -1 if added
+        private final int actualIndex; // index of the entry in the actual HAR, -1 if removed
+        private final List<String> details;
+    }
+}
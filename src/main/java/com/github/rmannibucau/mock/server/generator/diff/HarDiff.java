@@ -0,0 +1,671 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.diff;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.spi.JsonProvider;
+
+import com.github.rmannibucau.mock.server.generator.HarReader;
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+/**
+ * Compares two HAR captures, typically the committed one and the one generated by the build.
+ *
+ * Entries are aligned by request fingerprint (method, path, query parameters and body, the scheme/host/port are ignored)
+ * and occurrence, the n-th call of a request in a file is compared to the n-th call in the other one.
+ * Responses are compared structurally: header names are case insensitive and their order does not matter,
+ * JSON bodies are compared as JSON (member order, number formatting).
+ * Volatile headers ({@code Date} by default), query parameters and JSON paths can be ignored.
+ *
+ * Both files are streamed twice at most, concurrently: a first pass only keeps a fingerprint, a digest and a position
+ * per entry in compact hash tables, a second pass (only if there are differences) loads the entries of the reported
+ * differences to detail them. The memory depends on the number of entries, not on their size.
+ */
+public class HarDiff {
+    private static final int CHANGED = 0;
+    private static final int ADDED = 1;
+    private static final int REMOVED = 2;
+    private static final long NONE = 0x9E3779B97F4A7C15L;
+    private static final int POSITION_BITS = 30; // max 2^30 entries per file
+    private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+
+    private final HarReader reader = new HarReader();
+    private final JsonReaderFactory readerFactory = JsonProvider.provider().createReaderFactory(Collections.emptyMap());
+    private final Set<String> ignoredHeaders = new HashSet<>(Collections.singletonList("date"));
+    private final Set<String> ignoredQueryParameters = new HashSet<>();
+    private final List<String[]> ignoredJsonPaths = new ArrayList<>();
+    private int maxReported = 1000;
+    private int maxDetails = 32;
+
+    /**
+     * @param headers headers (case insensitive) ignored in the responses comparison, {@code Date} is ignored by default.
+     * @return this diff.
+     */
+    public HarDiff withIgnoredHeaders(final String... headers) {
+        for (final String header : headers) {
+            ignoredHeaders.add(header.toLowerCase(Locale.ROOT));
+        }
+        return this;
+    }
+
+    /**
+     * @param parameters query parameters ignored to align the requests (cache busters, timestamps...).
+     * @return this diff.
+     */
+    public HarDiff withIgnoredQueryParameters(final String... parameters) {
+        ignoredQueryParameters.addAll(Arrays.asList(parameters));
+        return this;
+    }
+
+    /**
+     * @param pointers JSON pointers (RFC 6901) ignored in the request and response bodies,
+     *                 a {@code *} segment matches any member or item, for instance {@code /items/*}{@code /updatedAt}.
+     * @return this diff.
+     */
+    public HarDiff withIgnoredJsonPaths(final String... pointers) {
+        for (final String pointer : pointers) {
+            if (!pointer.startsWith("/")) {
+                throw new IllegalArgumentException("Invalid JSON pointer: '" + pointer + "'");
+            }
+            final String[] segments = pointer.substring(1).split("/", -1);
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = segments[i].replace("~1", "/").replace("~0", "~");
+            }
+            ignoredJsonPaths.add(segments);
+        }
+        return this;
+    }
+
+    /**
+     * @param maxReported max number of detailed differences, default to 1000.
+     * @return this diff.
+     */
+    public HarDiff withMaxReported(final int maxReported) {
+        this.maxReported = maxReported;
+        return this;
+    }
+
+    /**
+     * @param maxDetails max number of details per difference, default to 32.
+     * @return this diff.
+     */
+    public HarDiff withMaxDetails(final int maxDetails) {
+        this.maxDetails = maxDetails;
+        return this;
+    }
+
+    public DiffReport diff(final Path expected, final Path actual) {
+        final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "har-diff");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final Future<Index> expectedTask = executor.submit(() -> index(expected));
+            final Index actualIndex = index(actual);
+            final Index expectedIndex = get(expectedTask);
+
+            long unchanged = 0;
+            long changed = 0;
+            long added = 0;
+            long removed = 0;
+            long[] differences = new long[16];
+            int differenceCount = 0;
+            final LongTable expectedTable = expectedIndex.entries;
+            final LongTable actualTable = actualIndex.entries;
+            for (int slot = 0; slot < expectedTable.keys.length; slot++) {
+                if (!expectedTable.used[slot]) {
+                    continue;
+                }
+                final int other = actualTable.slotOf(expectedTable.keys[slot]);
+                final long difference;
+                if (other < 0) {
+                    removed++;
+                    difference = encode(REMOVED, expectedTable.positions[slot], -1);
+                } else if (actualTable.values[other] != expectedTable.values[slot]) {
+                    changed++;
+                    difference = encode(CHANGED, actualTable.positions[other], expectedTable.positions[slot]);
+                } else {
+                    unchanged++;
+                    continue;
+                }
+                if (differenceCount == differences.length) {
+                    differences = Arrays.copyOf(differences, differenceCount * 2);
+                }
+                differences[differenceCount++] = difference;
+            }
+            for (int slot = 0; slot < actualTable.keys.length; slot++) {
+                if (actualTable.used[slot] && expectedTable.slotOf(actualTable.keys[slot]) < 0) {
+                    added++;
+                    if (differenceCount == differences.length) {
+                        differences = Arrays.copyOf(differences, differenceCount * 2);
+                    }
+                    differences[differenceCount++] = encode(ADDED, actualTable.positions[slot], -1);
+                }
+            }
+
+            // changed first then added and removed, in file order
+            Arrays.sort(differences, 0, differenceCount);
+            final int reported = Math.min(differenceCount, maxReported);
+            final BitSet expectedWanted = new BitSet();
+            final BitSet actualWanted = new BitSet();
+            for (int i = 0; i < reported; i++) {
+                final int kind = kindOf(differences[i]);
+                if (kind == REMOVED) {
+                    expectedWanted.set(referenceOf(differences[i]));
+                } else {
+                    actualWanted.set(referenceOf(differences[i]));
+                    if (kind == CHANGED) {
+                        expectedWanted.set(otherOf(differences[i]));
+                    }
+                }
+            }
+            final Future<Map<Integer, Har.Entry>> expectedEntries = executor.submit(() -> collect(expected, expectedWanted));
+            final Map<Integer, Har.Entry> actualEntries = collect(actual, actualWanted);
+            final Map<Integer, Har.Entry> expectedLoaded = get(expectedEntries);
+
+            final List<DiffReport.Difference> out = new ArrayList<>(reported);
+            for (int i = 0; i < reported; i++) {
+                final int reference = referenceOf(differences[i]);
+                switch (kindOf(differences[i])) {
+                    case CHANGED:
+                        final int expectedPosition = otherOf(differences[i]);
+                        final Har.Entry actualEntry = actualEntries.get(reference);
+                        out.add(new DiffReport.Difference(DiffReport.Kind.CHANGED,
+                                actualEntry.getRequest().getMethod(), actualEntry.getRequest().getUrl(), expectedPosition, reference,
+                                compare(expectedLoaded.get(expectedPosition).getResponse(), actualEntry.getResponse())));
+                        break;
+                    case ADDED:
+                        final Har.Entry addedEntry = actualEntries.get(reference);
+                        out.add(new DiffReport.Difference(DiffReport.Kind.ADDED,
+                                addedEntry.getRequest().getMethod(), addedEntry.getRequest().getUrl(), -1, reference,
+                                Collections.emptyList()));
+                        break;
+                    default:
+                        final Har.Entry removedEntry = expectedLoaded.get(reference);
+                        out.add(new DiffReport.Difference(DiffReport.Kind.REMOVED,
+                                removedEntry.getRequest().getMethod(), removedEntry.getRequest().getUrl(), reference, -1,
+                                Collections.emptyList()));
+                }
+            }
+            return new DiffReport(expectedIndex.count, actualIndex.count, unchanged, changed, added, removed, out);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Index index(final Path har) {
+        final Index index = new Index();
+        final LongTable occurrences = new LongTable();
+        try (final Stream<Har.Entry> entries = reader.entries(har)) {
+            final Iterator<Har.Entry> iterator = entries.iterator();
+            int position = 0;
+            while (iterator.hasNext()) {
+                final Har.Entry entry = iterator.next();
+                if (position == POSITION_MASK - 1) {
+                    throw new IllegalStateException("Too many entries in '" + har + "'");
+                }
+                if (entry.getRequest() != null && entry.getResponse() != null) {
+                    final long fingerprint = fingerprint(entry.getRequest());
+                    final long occurrence = occurrences.increment(fingerprint);
+                    index.entries.put(combine(fingerprint, occurrence), digest(entry.getResponse()), position);
+                    index.count++;
+                }
+                position++;
+            }
+        }
+        return index;
+    }
+
+    private Map<Integer, Har.Entry> collect(final Path har, final BitSet wanted) {
+        final int expected = wanted.cardinality();
+        final Map<Integer, Har.Entry> out = new HashMap<>(expected * 4 / 3 + 1);
+        if (expected == 0) {
+            return out;
+        }
+        try (final Stream<Har.Entry> entries = reader.entries(har)) {
+            final Iterator<Har.Entry> iterator = entries.iterator();
+            int position = 0;
+            while (iterator.hasNext() && out.size() < expected) {
+                final Har.Entry entry = iterator.next();
+                if (wanted.get(position)) {
+                    out.put(position, entry);
+                }
+                position++;
+            }
+        }
+        return out;
+    }
+
+    // request identity
+    private long fingerprint(final Har.Request request) {
+        long hash = hash(1, request.getMethod() == null ? "" : request.getMethod().toUpperCase(Locale.ROOT));
+        final String url = request.getUrl() == null ? "" : request.getUrl();
+        hash = combine(hash, hash(2, pathOf(url)));
+
+        long query = 0; // order independent
+        final Collection<Har.Query> queryString = request.getQueryString();
+        if (queryString != null && !queryString.isEmpty()) {
+            for (final Har.Query parameter : queryString) {
+                if (!ignoredQueryParameters.contains(parameter.getName())) {
+                    query += hash(3, parameter.getName() + '=' + parameter.getValue());
+                }
+            }
+        } else {
+            final int start = url.indexOf('?');
+            if (start >= 0 && start < url.length() - 1) {
+                for (final String parameter : url.substring(start + 1).split("&")) {
+                    final int separator = parameter.indexOf('=');
+                    if (!ignoredQueryParameters.contains(separator < 0 ? parameter : parameter.substring(0, separator))) {
+                        query += hash(3, separator < 0 ? parameter + '=' : parameter);
+                    }
+                }
+            }
+        }
+        hash = combine(hash, query);
+
+        final Har.PostData postData = request.getPostData();
+        if (postData != null && postData.getText() != null) {
+            hash = combine(hash, bodyHash(postData.getMimeType(), postData.getText(), postData.getEncoding()));
+        }
+        return hash;
+    }
+
+    private long digest(final Har.Response response) {
+        long hash = combine(4, response.getStatus());
+        long headers = 0;
+        if (response.getHeaders() != null) {
+            for (final Har.Header header : response.getHeaders()) {
+                final String name = header.getName().toLowerCase(Locale.ROOT);
+                if (!ignoredHeaders.contains(name)) {
+                    headers += hash(5, name + ':' + header.getValue());
+                }
+            }
+        }
+        hash = combine(hash, headers);
+        final Har.Content content = response.getContent();
+        if (content != null && content.getText() != null) {
+            hash = combine(hash, bodyHash(content.getMimeType(), content.getText(), content.getEncoding()));
+        }
+        return hash;
+    }
+
+    private long bodyHash(final String mimeType, final String text, final String encoding) {
+        final JsonValue json = parseJson(mimeType, text, encoding);
+        return json == null ? hash(6, text) : hash(json, new ArrayList<>());
+    }
+
+    private long hash(final JsonValue value, final List<String> path) {
+        switch (value.getValueType()) {
+            case OBJECT:
+                long members = 0; // order independent
+                for (final Map.Entry<String, JsonValue> member : ((JsonObject) value).entrySet()) {
+                    path.add(member.getKey());
+                    if (!isIgnored(path)) {
+                        members += combine(hash(7, member.getKey()), hash(member.getValue(), path));
+                    }
+                    path.remove(path.size() - 1);
+                }
+                return combine(8, members);
+            case ARRAY:
+                final JsonArray array = (JsonArray) value;
+                long items = combine(9, array.size());
+                for (int i = 0; i < array.size(); i++) {
+                    path.add(Integer.toString(i));
+                    items = combine(items, isIgnored(path) ? NONE : hash(array.get(i), path));
+                    path.remove(path.size() - 1);
+                }
+                return items;
+            case STRING:
+                return hash(10, ((JsonString) value).getString());
+            case NUMBER:
+                return hash(11, normalize(((JsonNumber) value).bigDecimalValue()));
+            case TRUE:
+                return 12;
+            case FALSE:
+                return 13;
+            default:
+                return 14;
+        }
+    }
+
+    private List<String> compare(final Har.Response expected, final Har.Response actual) {
+        final List<String> details = new ArrayList<>();
+        if (expected.getStatus() != actual.getStatus()) {
+            add(details, "status: " + expected.getStatus() + " -> " + actual.getStatus());
+        }
+
+        final Map<String, String> expectedHeaders = headers(expected);
+        final Map<String, String> actualHeaders = headers(actual);
+        final Set<String> names = new TreeSet<>(expectedHeaders.keySet());
+        names.addAll(actualHeaders.keySet());
+        for (final String name : names) {
+            final String expectedValue = expectedHeaders.get(name);
+            final String actualValue = actualHeaders.get(name);
+            if (expectedValue == null) {
+                add(details, "header " + name + ": added '" + actualValue + "'");
+            } else if (actualValue == null) {
+                add(details, "header " + name + ": removed '" + expectedValue + "'");
+            } else if (!expectedValue.equals(actualValue)) {
+                add(details, "header " + name + ": '" + expectedValue + "' -> '" + actualValue + "'");
+            }
+        }
+
+        final Har.Content expectedContent = expected.getContent() == null ? new Har.Content() : expected.getContent();
+        final Har.Content actualContent = actual.getContent() == null ? new Har.Content() : actual.getContent();
+        final JsonValue expectedJson = parseJson(expectedContent.getMimeType(), expectedContent.getText(), expectedContent.getEncoding());
+        final JsonValue actualJson = parseJson(actualContent.getMimeType(), actualContent.getText(), actualContent.getEncoding());
+        if (expectedJson != null && actualJson != null) {
+            compare(expectedJson, actualJson, new ArrayList<>(), details);
+        } else {
+            final String expectedText = expectedContent.getText() == null ? "" : expectedContent.getText();
+            final String actualText = actualContent.getText() == null ? "" : actualContent.getText();
+            if (!expectedText.equals(actualText)) {
+                add(details, "body: " + abbreviate(expectedText) + " -> " + abbreviate(actualText));
+            }
+        }
+        return details;
+    }
+
+    private void compare(final JsonValue expected, final JsonValue actual, final List<String> path, final List<String> details) {
+        if (details.size() > maxDetails) {
+            return;
+        }
+        if (expected.getValueType() == JsonValue.ValueType.OBJECT && actual.getValueType() == JsonValue.ValueType.OBJECT) {
+            final JsonObject expectedObject = (JsonObject) expected;
+            final JsonObject actualObject = (JsonObject) actual;
+            final Set<String> keys = new TreeSet<>(expectedObject.keySet());
+            keys.addAll(actualObject.keySet());
+            for (final String key : keys) {
+                path.add(key);
+                if (!isIgnored(path)) {
+                    final JsonValue expectedValue = expectedObject.get(key);
+                    final JsonValue actualValue = actualObject.get(key);
+                    if (expectedValue == null) {
+                        add(details, "body " + pointer(path) + ": added " + abbreviate(actualValue.toString()));
+                    } else if (actualValue == null) {
+                        add(details, "body " + pointer(path) + ": removed " + abbreviate(expectedValue.toString()));
+                    } else {
+                        compare(expectedValue, actualValue, path, details);
+                    }
+                }
+                path.remove(path.size() - 1);
+            }
+        } else if (expected.getValueType() == JsonValue.ValueType.ARRAY && actual.getValueType() == JsonValue.ValueType.ARRAY) {
+            final JsonArray expectedArray = (JsonArray) expected;
+            final JsonArray actualArray = (JsonArray) actual;
+            if (expectedArray.size() != actualArray.size()) {
+                add(details, "body " + pointer(path) + ": " + expectedArray.size() + " items -> " + actualArray.size() + " items");
+            }
+            for (int i = 0; i < Math.min(expectedArray.size(), actualArray.size()); i++) {
+                path.add(Integer.toString(i));
+                if (!isIgnored(path)) {
+                    compare(expectedArray.get(i), actualArray.get(i), path, details);
+                }
+                path.remove(path.size() - 1);
+            }
+        } else if (expected.getValueType() == JsonValue.ValueType.NUMBER && actual.getValueType() == JsonValue.ValueType.NUMBER) {
+            if (((JsonNumber) expected).bigDecimalValue().compareTo(((JsonNumber) actual).bigDecimalValue()) != 0) {
+                add(details, "body " + pointer(path) + ": " + expected + " -> " + actual);
+            }
+        } else if (!expected.equals(actual)) {
+            add(details, "body " + pointer(path) + ": " + abbreviate(expected.toString()) + " -> " + abbreviate(actual.toString()));
+        }
+    }
+
+    private Map<String, String> headers(final Har.Response response) {
+        final Map<String, List<String>> values = new TreeMap<>();
+        if (response.getHeaders() != null) {
+            for (final Har.Header header : response.getHeaders()) {
+                final String name = header.getName().toLowerCase(Locale.ROOT);
+                if (!ignoredHeaders.contains(name)) {
+                    values.computeIfAbsent(name, k -> new ArrayList<>()).add(header.getValue());
+                }
+            }
+        }
+        final Map<String, String> out = new TreeMap<>();
+        values.forEach((name, list) -> {
+            Collections.sort(list); // the digest does not depend on the order
+            out.put(name, String.join(", ", list));
+        });
+        return out;
+    }
+
+    private JsonValue parseJson(final String mimeType, final String text, final String encoding) {
+        if (text == null || text.isEmpty() || mimeType == null || !mimeType.toLowerCase(Locale.ROOT).contains("json")) {
+            return null;
+        }
+        try (final JsonReader jsonReader = "base64".equalsIgnoreCase(encoding) ?
+                readerFactory.createReader(new ByteArrayInputStream(Base64.getDecoder().decode(text))) :
+                readerFactory.createReader(new StringReader(text))) {
+            return jsonReader.readValue();
+        } catch (final JsonException | IllegalArgumentException e) { // not JSON (truncated...), compared as text
+            return null;
+        }
+    }
+
+    private boolean isIgnored(final List<String> path) {
+        for (final String[] pattern : ignoredJsonPaths) {
+            if (pattern.length != path.size()) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < pattern.length && matches; i++) {
+                matches = "*".equals(pattern[i]) || pattern[i].equals(path.get(i));
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(final List<String> details, final String detail) {
+        if (details.size() < maxDetails) {
+            details.add(detail);
+        } else if (details.size() == maxDetails) {
+            details.add("...");
+        }
+    }
+
+    private static String pointer(final List<String> path) {
+        if (path.isEmpty()) {
+            return "/";
+        }
+        final StringBuilder out = new StringBuilder();
+        for (final String segment : path) {
+            out.append('/').append(segment.replace("~", "~0").replace("/", "~1"));
+        }
+        return out.toString();
+    }
+
+    private static String abbreviate(final String value) {
+        return value.length() <= 80 ? value : value.substring(0, 77) + "...";
+    }
+
+    private static String normalize(final BigDecimal number) {
+        return number.signum() == 0 ? "0" : number.stripTrailingZeros().toPlainString();
+    }
+
+    // without scheme/authority/query, captures of random ports servers must align
+    private static String pathOf(final String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : url.indexOf('/', start + 3);
+        if (start < 0) {
+            return "/";
+        }
+        final int end = url.indexOf('?', start);
+        return url.substring(start, end < 0 ? url.length() : end);
+    }
+
+    private static <T> T get(final Future<T> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // kind (bits 60-61) then the reference position (actual file except for removed entries) and the other position + 1,
+    // positive so a signed sort orders by kind then position
+    private static long encode(final int kind, final int reference, final int other) {
+        return ((long) kind << (2 * POSITION_BITS)) | ((long) reference << POSITION_BITS) | (other + 1);
+    }
+
+    private static int kindOf(final long difference) {
+        return (int) (difference >>> (2 * POSITION_BITS));
+    }
+
+    private static int referenceOf(final long difference) {
+        return (int) ((difference >>> POSITION_BITS) & POSITION_MASK);
+    }
+
+    private static int otherOf(final long difference) {
+        return (int) (difference & POSITION_MASK) - 1;
+    }
+
+    private static long hash(final long seed, final String value) {
+        long hash = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long combine(final long hash, final long value) {
+        return mix(hash * 0x9E3779B97F4A7C15L + value);
+    }
+
+    private static long mix(final long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static class Index {
+        private final LongTable entries = new LongTable();
+        private long count;
+    }
+
+    // open addressing long -> (long, int) table, avoids boxing a key, a value and a node per entry
+    private static class LongTable {
+        private long[] keys = new long[1024];
+        private long[] values = new long[1024];
+        private int[] positions = new int[1024];
+        private boolean[] used = new boolean[1024];
+        private int size;
+
+        private int slotOf(final long key) {
+            final int mask = keys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (used[slot]) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void put(final long key, final long value, final int position) {
+            if (size * 2 >= keys.length) {
+                grow();
+            }
+            final int mask = keys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = value;
+            positions[slot] = position;
+        }
+
+        // uses the value as a counter, returns the new count
+        private long increment(final long key) {
+            final int slot = slotOf(key);
+            if (slot < 0) {
+                put(key, 1, 0);
+                return 1;
+            }
+            return ++values[slot];
+        }
+
+        private void grow() {
+            final long[] oldKeys = keys;
+            final long[] oldValues = values;
+            final int[] oldPositions = positions;
+            final boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            positions = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    put(oldKeys[i], oldValues[i], oldPositions[i]);
+                }
+            }
+        }
+    }
+}
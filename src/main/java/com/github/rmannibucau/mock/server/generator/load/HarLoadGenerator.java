@@ -0,0 +1,305 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.load;
+
+import static java.util.Arrays.asList;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.ws.rs.client.AsyncInvoker;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.github.rmannibucau.mock.server.generator.HarReader;
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+/**
+ * Replays the requests of a HAR against a real backend to turn a capture into load.
+ *
+ * It is an open model generator: each request has an intended start time, either from a constant rate
+ * or from the recorded {@code startedDateTime}s, and is sent at that time whatever the backend response times are.
+ * Requests are sent with the asynchronous JAX-RS client API so a single dispatching thread drives the load,
+ * the number of requests in flight is bounded by {@link #withMaxInFlight(int)}.
+ *
+ * When the generator falls behind (backend slower than the rate, max in flight reached) the response time is still
+ * measured from the intended start time, this corrects the coordinated omission, the service time (from the actual send)
+ * is reported too.
+ *
+ * The HAR is streamed so the memory does not depend on the capture size.
+ */
+public class HarLoadGenerator {
+    private static final Logger LOGGER = Logger.getLogger(HarLoadGenerator.class.getName());
+    private static final Collection<String> SKIPPED_HEADERS = asList(
+            "host", "content-length", "transfer-encoding", "connection");
+
+    public enum Pacing {
+        CONSTANT_RATE, RECORDED
+    }
+
+    private final Client client;
+    private final String target;
+    private Pacing pacing = Pacing.CONSTANT_RATE;
+    private double rate = 100;
+    private double speed = 1;
+    private int maxInFlight = 256;
+    private long duration = Long.MAX_VALUE;
+
+    /**
+     * @param client the client used to send the requests, its configuration (timeouts, async executor) is used as is.
+     * @param target the base of the backend (scheme, host, port and optionally a path prefix), it replaces the recorded one.
+     */
+    public HarLoadGenerator(final Client client, final String target) {
+        this.client = client;
+        this.target = target.endsWith("/") ? target.substring(0, target.length() - 1) : target;
+    }
+
+    /**
+     * @param requestsPerSecond the constant rate of the requests.
+     * @return this generator.
+     */
+    public HarLoadGenerator withRate(final double requestsPerSecond) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("Invalid rate: " + requestsPerSecond);
+        }
+        this.pacing = Pacing.CONSTANT_RATE;
+        this.rate = requestsPerSecond;
+        return this;
+    }
+
+    /**
+     * Sends the requests with the recorded delays between them.
+     *
+     * @param speed acceleration factor, {@code 2} replays the capture twice faster than recorded.
+     * @return this generator.
+     */
+    public HarLoadGenerator withRecordedPacing(final double speed) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Invalid speed: " + speed);
+        }
+        this.pacing = Pacing.RECORDED;
+        this.speed = speed;
+        return this;
+    }
+
+    public HarLoadGenerator withMaxInFlight(final int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Invalid max in flight: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * @param duration max duration of the run, requests intended after it are not sent.
+     * @param unit     the duration unit.
+     * @return this generator.
+     */
+    public HarLoadGenerator withDuration(final long duration, final TimeUnit unit) {
+        this.duration = unit.toNanos(duration);
+        return this;
+    }
+
+    public LoadReport run(final Path har) {
+        try (final Stream<Har.Entry> entries = new HarReader().entries(har)) {
+            return run(entries);
+        }
+    }
+
+    /**
+     * @param entries the entries to replay, they are consumed lazily.
+     * @return the report of the run once all the sent requests completed.
+     */
+    public LoadReport run(final Stream<Har.Entry> entries) {
+        final LoadReport report = new LoadReport();
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final long start = System.nanoTime();
+        final long deadline = duration == Long.MAX_VALUE ? Long.MAX_VALUE : start + duration;
+        final Iterator<Har.Entry> iterator = entries.iterator();
+        ZonedDateTime first = null;
+        long offset = 0;
+        long index = 0;
+        try {
+            while (iterator.hasNext()) {
+                final Har.Entry entry = iterator.next();
+                if (entry.getRequest() == null) {
+                    continue;
+                }
+                if (pacing == Pacing.CONSTANT_RATE) {
+                    offset = (long) (index * TimeUnit.SECONDS.toNanos(1) / rate);
+                } else if (entry.getStartedDateTime() != null) { // else same time as the previous one
+                    if (first == null) {
+                        first = entry.getStartedDateTime();
+                    }
+                    offset = Math.max(offset, (long) (Duration.between(first, entry.getStartedDateTime()).toNanos() / speed));
+                }
+                index++;
+
+                final long intended = start + offset;
+                if (intended - deadline >= 0) {
+                    break;
+                }
+                waitUntil(intended);
+                inFlight.acquire();
+                send(entry.getRequest(), intended, report, inFlight);
+            }
+            inFlight.acquire(maxInFlight);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report.setDuration(System.nanoTime() - start);
+        return report;
+    }
+
+    private void send(final Har.Request request, final long intended, final LoadReport report, final Semaphore inFlight) {
+        final long sent = System.nanoTime();
+        report.onSent(sent - intended);
+        try { // an invalid recorded request is a failed one, it must not stop the run nor leak its permit
+            if (request.getMethod() == null || request.getUrl() == null) {
+                throw new IllegalArgumentException("No method or url for " + request);
+            }
+            final String method = request.getMethod().toUpperCase(Locale.ROOT);
+            final URI uri = toUri(request);
+            final Invocation.Builder builder = client.target(uri).request();
+            if (request.getHeaders() != null) {
+                for (final Har.Header header : request.getHeaders()) {
+                    if (!SKIPPED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                        builder.header(header.getName(), header.getValue());
+                    }
+                }
+            }
+            final InvocationCallback<Response> callback = new InvocationCallback<Response>() {
+                @Override
+                public void completed(final Response response) {
+                    try {
+                        drain(response);
+                        final long end = System.nanoTime();
+                        report.onCompleted(method, uri.getRawPath(), response.getStatus(), end - intended, end - sent);
+                    } catch (final RuntimeException re) { // connection lost while reading the body
+                        LOGGER.log(Level.FINE, re.getMessage(), re);
+                        report.onFailed();
+                    } finally {
+                        response.close();
+                        inFlight.release();
+                    }
+                }
+
+                @Override
+                public void failed(final Throwable throwable) {
+                    try {
+                        LOGGER.log(Level.FINE, throwable.getMessage(), throwable);
+                        report.onFailed();
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            };
+            final AsyncInvoker invoker = builder.async();
+            final Entity<?> entity = toEntity(request.getPostData());
+            if (entity == null) {
+                invoker.method(method, callback);
+            } else {
+                invoker.method(method, entity, callback);
+            }
+        } catch (final RuntimeException re) {
+            LOGGER.log(Level.FINE, re.getMessage(), re);
+            report.onFailed();
+            inFlight.release();
+        }
+    }
+
+    // the body is part of the response time
+    private static void drain(final Response response) {
+        if (!response.hasEntity()) {
+            return;
+        }
+        final byte[] buffer = new byte[8192];
+        try (final InputStream stream = response.readEntity(InputStream.class)) {
+            while (stream.read(buffer) >= 0) {
+                // no-op
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private URI toUri(final Har.Request request) {
+        final URI recorded = URI.create(request.getUrl());
+        final StringBuilder uri = new StringBuilder(target);
+        uri.append(recorded.getRawPath() == null || recorded.getRawPath().isEmpty() ? "/" : recorded.getRawPath());
+        final Collection<Har.Query> queryString = request.getQueryString();
+        if (queryString != null && !queryString.isEmpty()) { // HAR values are decoded
+            char separator = '?';
+            for (final Har.Query query : queryString) {
+                uri.append(separator).append(encode(query.getName())).append('=').append(encode(query.getValue()));
+                separator = '&';
+            }
+        } else if (recorded.getRawQuery() != null && !recorded.getRawQuery().isEmpty()) {
+            uri.append('?').append(recorded.getRawQuery());
+        }
+        return URI.create(uri.toString());
+    }
+
+    private static String encode(final String value) {
+        if (value == null) {
+            return "";
+        }
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Entity<?> toEntity(final Har.PostData postData) {
+        if (postData == null || postData.getText() == null) {
+            return null;
+        }
+        final MediaType mediaType = postData.getMimeType() == null || postData.getMimeType().isEmpty() ?
+                MediaType.APPLICATION_OCTET_STREAM_TYPE : MediaType.valueOf(postData.getMimeType());
+        if ("base64".equalsIgnoreCase(postData.getEncoding())) {
+            return Entity.entity(Base64.getDecoder().decode(postData.getText()), mediaType);
+        }
+        return Entity.entity(postData.getText(), mediaType);
+    }
+
+    private static void waitUntil(final long intended) {
+        long remaining;
+        while ((remaining = intended - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
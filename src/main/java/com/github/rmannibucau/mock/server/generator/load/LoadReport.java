@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.load;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.rmannibucau.mock.server.generator.LatencyHistogram;
+import com.github.rmannibucau.mock.server.generator.LatencyStatistics;
+
+/**
+ * Result of a {@link HarLoadGenerator} run, all the durations are in nanoseconds.
+ *
+ * {@link #getResponseTimes()} are measured from the intended start of the requests (coordinated omission corrected)
+ * whereas {@link #getServiceTimes()} are measured from their actual send, a big difference between both means
+ * the generator could not keep the pace.
+ */
+public class LoadReport {
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLongArray statusClasses = new AtomicLongArray(6);
+    private final AtomicLong maxSendLag = new AtomicLong();
+    private final LatencyHistogram responseTimes = new LatencyHistogram();
+    private final LatencyHistogram serviceTimes = new LatencyHistogram();
+    private final LatencyStatistics endpoints = new LatencyStatistics();
+    private volatile long duration;
+
+    void onSent(final long lag) {
+        sent.increment();
+        long current;
+        while ((current = maxSendLag.get()) < lag && !maxSendLag.compareAndSet(current, lag)) {
+            // retry
+        }
+    }
+
+    void onCompleted(final String method, final String path, final int status, final long responseTime, final long serviceTime) {
+        completed.increment();
+        statusClasses.incrementAndGet(Math.max(0, Math.min(5, status / 100)));
+        responseTimes.record(responseTime);
+        serviceTimes.record(serviceTime);
+        endpoints.record(method, path, responseTime);
+    }
+
+    void onFailed() {
+        failed.increment();
+    }
+
+    void setDuration(final long duration) {
+        this.duration = duration;
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * @return requests without response (connection error, timeout...).
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @param statusClass 1 to 5 (1xx to 5xx).
+     * @return number of responses with this status class.
+     */
+    public long getStatusCount(final int statusClass) {
+        return statusClasses.get(statusClass);
+    }
+
+    /**
+     * @return max delay between the intended start of a request and its send.
+     */
+    public long getMaxSendLag() {
+        return maxSendLag.get();
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public double getThroughput() {
+        return duration == 0 ? 0 : getCompleted() * (double) TimeUnit.SECONDS.toNanos(1) / duration;
+    }
+
+    public LatencyHistogram getResponseTimes() {
+        return responseTimes;
+    }
+
+    public LatencyHistogram getServiceTimes() {
+        return serviceTimes;
+    }
+
+    /**
+     * @return response times per endpoint (method and path template).
+     */
+    public LatencyStatistics getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @return a human readable summary of the run, times are in milliseconds.
+     */
+    public String summary() {
+        final StringBuilder out = new StringBuilder()
+                .append(String.format(Locale.ROOT, "%d requests sent, %d completed, %d failed in %.3fs (%.1f req/s)%n",
+                        getSent(), getCompleted(), getFailed(), duration / 1e9, getThroughput()))
+                .append(String.format(Locale.ROOT, "status: 1xx=%d, 2xx=%d, 3xx=%d, 4xx=%d, 5xx=%d%n",
+                        getStatusCount(1), getStatusCount(2), getStatusCount(3), getStatusCount(4), getStatusCount(5)))
+                .append("response time: ").append(format(responseTimes)).append(System.lineSeparator())
+                .append("service time:  ").append(format(serviceTimes)).append(System.lineSeparator())
+                .append(String.format(Locale.ROOT, "max send lag: %.3fms%n", maxSendLag.get() / 1e6));
+        final Map<String, LatencyHistogram> sorted = new TreeMap<>(endpoints.getHistograms());
+        sorted.forEach((endpoint, histogram) -> out.append("  ").append(endpoint).append(": ")
+                .append(format(histogram)).append(System.lineSeparator()));
+        return out.toString();
+    }
+
+    private static String format(final LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "count=%d, mean=%.3f, p50=%.3f, p90=%.3f, p99=%.3f, p99.9=%.3f, max=%.3f",
+                histogram.getCount(), histogram.getMean() / 1e6,
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(90) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6, histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMax() / 1e6);
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.rmannibucau.mock.server.generator.model;
+
+import java.util.Collection;
+import java.util.Map;
+
+import javax.json.JsonObject;
+import javax.json.bind.annotation.JsonbTransient;
+
+import lombok.Data;
+
+// compact view of a capture, see ContractExtractor
+@Data
+public class Contract {
+    private String version = "1.0";
+    private Collection<Route> routes;
+
+    @Data
+    public static class Route {
+        private String method;
+        private String path; // template
+        private long count;
+        private Collection<Parameter> queryParameters;
+        private Payload request;
+        private Map<String, Payload> responses; // by status
+
+        @JsonbTransient
+        private Har.Entry representative;
+    }
+
+    @Data
+    public static class Parameter {
+        private String name;
+        private boolean required;
+    }
+
+    @Data
+    public static class Payload {
+        private long count;
+        private Collection<String> contentTypes;
+        private JsonObject schema; // JSON schema inferred from the JSON bodies
+    }
+}
@@ -4,6 +4,7 @@ import java.time.ZonedDateTime;
 import java.util.Collection;
 
 import javax.json.bind.annotation.JsonbDateFormat;
+import javax.json.bind.annotation.JsonbProperty;
 
 import lombok.Data;
 
@@ -65,6 +66,12 @@ public class Har {
         private Collection<Param> params;
         private String text;
         private String comment = "";
+
+        @JsonbProperty("_encoding") // custom, base64 for a stored body
+        private String encoding;
+
+        @JsonbProperty("_file") // custom, reference of the body in a BodyStore
+        private String file;
     }
 
     @Data
@@ -142,6 +149,9 @@ public class Har {
         private String text;
         private String encoding; // base64 if text is encoded
         private String comment;
+
+        @JsonbProperty("_file") // custom, reference of the body in a BodyStore
+        private String file;
     }
 
     @Data
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+import lombok.Getter;
+
+/**
+ * The wire form of a {@link ReplayEntry}: headers and body bytes, the gzip variant when it is worth it
+ * and the entity tags of both representations (the identity and the gzip variants are different representations
+ * so they get different strong tags).
+ */
+@Getter
+public class CachedResponse {
+    private final int status;
+    private final String[] headerNames;
+    private final String[] headerValues;
+    private final byte[] body;
+    private final byte[] gzipBody;
+    private final String etag;
+    private final String gzipEtag;
+    private final long size;
+
+    private CachedResponse(final ReplayEntry entry, final byte[] body, final byte[] gzipBody, final String hash) {
+        this.status = entry.getStatus();
+        this.headerNames = entry.getHeaderNames();
+        this.headerValues = entry.getHeaderValues();
+        this.body = body;
+        this.gzipBody = gzipBody;
+        this.etag = '"' + hash + '"';
+        this.gzipEtag = gzipBody == null ? null : ('"' + hash + "-gzip\"");
+
+        long headers = 0;
+        for (int i = 0; i < headerNames.length; i++) {
+            headers += 2 * (headerNames[i].length() + headerValues[i].length());
+        }
+        this.size = body.length + (gzipBody == null ? 0 : gzipBody.length) + headers;
+    }
+
+    /**
+     * @param entry               the entry to encode.
+     * @param compressionThreshold min body size to try a gzip variant, it is only kept if smaller than the body.
+     * @return the encoded response.
+     */
+    public static CachedResponse of(final ReplayEntry entry, final int compressionThreshold) {
+        final byte[] body = entry.getBody();
+        byte[] gzip = null;
+        if (body.length >= compressionThreshold) {
+            gzip = gzip(body);
+            if (gzip.length >= body.length) {
+                gzip = null;
+            }
+        }
+        return new CachedResponse(entry, body, gzip, hash(body));
+    }
+
+    /**
+     * @param ifNoneMatch the {@code If-None-Match} header value.
+     * @return true if one of the listed tags designates this response (weak comparison as required for this header).
+     */
+    public boolean matches(final String ifNoneMatch) {
+        int start = 0;
+        while (start < ifNoneMatch.length()) {
+            int end = ifNoneMatch.indexOf(',', start);
+            if (end < 0) {
+                end = ifNoneMatch.length();
+            }
+            String tag = ifNoneMatch.substring(start, end).trim();
+            if ("*".equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals(gzipEtag)) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private static byte[] gzip(final byte[] body) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 2));
+        try (final GZIPOutputStream stream = new GZIPOutputStream(out)) {
+            stream.write(body);
+        } catch (final IOException e) { // in memory, can't happen
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // 128 bits of the SHA-256 are plenty to identify a body of a single HAR and keep the header short
+    private static String hash(final byte[] body) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a HAR as a mock server using the JDK HTTP server.
+ * Responses are encoded once (body bytes, gzip variant, entity tag) and kept in a {@link ResponseCache}
+ * so a hit only writes bytes, the cache is preloaded at startup until its budget is full.
+ * Clients sending {@code Accept-Encoding: gzip} get the compressed variant and
+ * {@code If-None-Match} requests matching the entity tag get a {@code 304}.
+ *
+ * Entries are indexed (see {@link IndexedRequestMatcher}) so finding the response does not depend
+ * on the number of entries. Unmatched requests get a 404 and request bodies bigger than
+ * {@link #withMaxRequestBodySize(long)} a 413.
+ *
+ * With {@link #withLatency(ReplayLatency)} the responses are delayed as recorded. Delayed responses are scheduled
+ * on a timer instead of holding a request thread so many slow connections can be open at the same time.
+ */
+public class HarMockServer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(HarMockServer.class.getName());
+
+    private final InetSocketAddress address;
+    private final int threads;
+    private final List<ReplayEntry> entries;
+    private final RequestMatcher matcher;
+    private ResponseCache responseCache = new ResponseCache(64 * 1024 * 1024);
+    private long maxRequestBodySize;
+    private ReplayLatency latency;
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService timer;
+
+    public HarMockServer(final Har har) {
+        this(har, new InetSocketAddress("localhost", 0), Math.max(2, Runtime.getRuntime().availableProcessors() * 2), MatchStrictness.PATH);
+    }
+
+    public HarMockServer(final Har har, final InetSocketAddress address, final int threads, final MatchStrictness strictness) {
+        this.address = address;
+        this.threads = threads;
+        this.entries = toReplayEntries(har);
+        this.matcher = new IndexedRequestMatcher(entries, strictness);
+        this.maxRequestBodySize = Math.max(1024 * 1024, entries.stream()
+                .map(ReplayEntry::getRequestBody)
+                .filter(Objects::nonNull)
+                .mapToLong(it -> it.getBytes(StandardCharsets.UTF_8).length)
+                .max()
+                .orElse(0));
+    }
+
+    /**
+     * @param maxBytes max size of the encoded responses kept in memory, default to 64MB.
+     * @return this server.
+     */
+    public HarMockServer withResponseCacheSize(final long maxBytes) {
+        return withResponseCache(new ResponseCache(maxBytes));
+    }
+
+    public synchronized HarMockServer withResponseCache(final ResponseCache responseCache) {
+        if (server != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        this.responseCache = responseCache;
+        return this;
+    }
+
+    /**
+     * @param latency how to delay the responses from the recorded timings, null to respond immediately (default).
+     * @return this server.
+     */
+    public synchronized HarMockServer withLatency(final ReplayLatency latency) {
+        if (server != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param maxBytes max size of a request body, bigger requests get a 413.
+     *                 Default to the largest recorded request body with a minimum of 1MB.
+     * @return this server.
+     */
+    public synchronized HarMockServer withMaxRequestBodySize(final long maxBytes) {
+        if (server != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxRequestBodySize must be positive");
+        }
+        this.maxRequestBodySize = maxBytes;
+        return this;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public static List<ReplayEntry> toReplayEntries(final Har har) {
+        final Collection<Har.Entry> harEntries = har.getLog().getEntries();
+        final List<ReplayEntry> entries = new ArrayList<>(harEntries == null ? 0 : harEntries.size());
+        if (harEntries != null) {
+            for (final Har.Entry entry : harEntries) {
+                if (entry.getRequest() != null && entry.getResponse() != null) {
+                    entries.add(new ReplayEntry(entries.size(), entry));
+                }
+            }
+        }
+        return entries;
+    }
+
+    public synchronized HarMockServer start() {
+        if (server != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        try {
+            server = HttpServer.create(address, 1024);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        responseCache.preload(entries);
+        final AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            final Thread thread = new Thread(r, "har-mock-server-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (latency != null) {
+            final AtomicInteger timerCounter = new AtomicInteger();
+            timer = Executors.newScheduledThreadPool(Math.max(1, threads / 4), r -> {
+                final Thread thread = new Thread(r, "har-mock-server-timer-" + timerCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return this;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + getPort();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            if (timer != null) {
+                timer.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server = null;
+        timer = null;
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        boolean scheduled = false;
+        try {
+            final String requestBody;
+            try {
+                requestBody = readBody(exchange);
+            } catch (final RequestBodyTooLargeException e) { // the JDK server drains or drops the rest on close
+                exchange.sendResponseHeaders(413, -1);
+                return;
+            }
+            final ReplayEntry entry = matcher.match(new ReplayRequest(
+                    exchange.getRequestMethod(), exchange.getRequestURI().getRawPath(), exchange.getRequestURI().getRawQuery(),
+                    requestBody));
+            if (entry == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final CachedResponse response = responseCache.get(entry);
+            final Headers headers = exchange.getResponseHeaders();
+            final String[] names = response.getHeaderNames();
+            final String[] values = response.getHeaderValues();
+            for (int i = 0; i < names.length; i++) {
+                headers.add(names[i], values[i]);
+            }
+
+            final Headers requestHeaders = exchange.getRequestHeaders();
+            final boolean gzip = response.getGzipBody() != null && acceptsGzip(requestHeaders.get("Accept-Encoding"));
+            if (response.getGzipBody() != null) {
+                headers.add("Vary", "Accept-Encoding");
+            }
+            headers.add("ETag", gzip ? response.getGzipEtag() : response.getEtag());
+
+            final int status;
+            final byte[] body;
+            final String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+            if (ifNoneMatch != null && response.getStatus() / 100 == 2 && response.matches(ifNoneMatch)) {
+                status = 304;
+                body = null;
+            } else {
+                status = response.getStatus();
+                final byte[] bytes = gzip ? response.getGzipBody() : response.getBody();
+                if (gzip) {
+                    headers.add("Content-Encoding", "gzip");
+                }
+                body = bytes.length == 0 || "HEAD".equalsIgnoreCase(exchange.getRequestMethod()) ? null : bytes;
+            }
+
+            if (latency != null) {
+                final long wait = latency.delay(entry.getWaitTime());
+                final long receive = body == null ? 0 : latency.delay(entry.getReceiveTime());
+                if (wait > 0 || receive > 0) {
+                    timer.schedule(() -> sendHeaders(exchange, status, body, receive), wait, TimeUnit.NANOSECONDS);
+                    scheduled = true;
+                    return;
+                }
+            }
+            exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+            if (body != null) {
+                sendBody(exchange, body);
+            }
+        } finally {
+            if (!scheduled) {
+                exchange.close();
+            }
+        }
+    }
+
+    // time to first byte elapsed, the body follows after the receive delay
+    private void sendHeaders(final HttpExchange exchange, final int status, final byte[] body, final long receive) {
+        boolean scheduled = false;
+        try {
+            exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+            if (body != null) {
+                if (receive > 0) {
+                    timer.schedule(() -> {
+                        try {
+                            sendBody(exchange, body);
+                        } catch (final IOException e) {
+                            LOGGER.log(Level.FINEST, e.getMessage(), e); // client gone
+                        } finally {
+                            exchange.close();
+                        }
+                    }, receive, TimeUnit.NANOSECONDS);
+                    scheduled = true;
+                } else {
+                    sendBody(exchange, body);
+                }
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.FINEST, e.getMessage(), e);
+        } finally {
+            if (!scheduled) {
+                exchange.close();
+            }
+        }
+    }
+
+    private void sendBody(final HttpExchange exchange, final byte[] body) throws IOException {
+        try (final OutputStream stream = exchange.getResponseBody()) {
+            stream.write(body);
+        }
+    }
+
+    // gzip (or *) listed without a zero quality
+    static boolean acceptsGzip(final List<String> acceptEncodings) {
+        if (acceptEncodings == null) {
+            return false;
+        }
+        for (final String acceptEncoding : acceptEncodings) {
+            for (final String coding : acceptEncoding.split(",")) {
+                final int parameters = coding.indexOf(';');
+                final String name = (parameters < 0 ? coding : coding.substring(0, parameters)).trim();
+                if (!"gzip".equalsIgnoreCase(name) && !"*".equals(name)) {
+                    continue;
+                }
+                if (parameters < 0) {
+                    return true;
+                }
+                final String quality = coding.substring(parameters + 1).replace(" ", "");
+                return !quality.startsWith("q=0") || quality.matches("q=0\\.0*[1-9].*");
+            }
+        }
+        return false;
+    }
+
+    private String readBody(final HttpExchange exchange) throws IOException {
+        final String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if ((length == null || "0".equals(length)) && exchange.getRequestHeaders().getFirst("Transfer-Encoding") == null) {
+            return null;
+        }
+        if (length != null && exceeds(length, maxRequestBodySize)) {
+            throw new RequestBodyTooLargeException();
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(initialBufferSize(length));
+        final byte[] buffer = new byte[8192];
+        int read;
+        try (final InputStream stream = exchange.getRequestBody()) {
+            while ((read = stream.read(buffer)) >= 0) {
+                if (out.size() + (long) read > maxRequestBodySize) { // chunked or lying Content-Length
+                    throw new RequestBodyTooLargeException();
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static boolean exceeds(final String contentLength, final long max) {
+        try {
+            return Long.parseLong(contentLength.trim()) > max;
+        } catch (final NumberFormatException nfe) { // checked while reading
+            return false;
+        }
+    }
+
+    // the header is only a hint, a client can't make the server allocate more than what it actually sends
+    static int initialBufferSize(final String contentLength) {
+        if (contentLength == null) {
+            return 512;
+        }
+        try {
+            final long length = Long.parseLong(contentLength.trim());
+            return length <= 0 ? 512 : (int) Math.min(length, 64 * 1024);
+        } catch (final NumberFormatException nfe) { // unknown
+            return 512;
+        }
+    }
+
+    private static class RequestBodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private RequestBodyTooLargeException() {
+            super("Request body too large", null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() { // control flow only
+            return this;
+        }
+    }
+}
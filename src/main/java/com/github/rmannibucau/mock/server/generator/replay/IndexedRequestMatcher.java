@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+import com.github.rmannibucau.mock.server.generator.PathTemplates;
+
+/**
+ * Indexes entries by method and path (and method and path template) then, in each endpoint bucket,
+ * by query and by query+body. A lookup is a few hash lookups whatever the number of entries.
+ *
+ * The index is immutable once built so it is safe to share it between threads.
+ */
+public class IndexedRequestMatcher implements RequestMatcher {
+    private final MatchStrictness strictness;
+    private final Map<String, Bucket> byPath = new HashMap<>();
+    private final Map<String, Bucket> byTemplate = new HashMap<>();
+
+    public IndexedRequestMatcher(final Collection<ReplayEntry> entries, final MatchStrictness strictness) {
+        this.strictness = strictness;
+        for (final ReplayEntry entry : entries) { // first recorded wins since putIfAbsent is used in buckets
+            byPath.computeIfAbsent(key(entry.getMethod(), entry.getPath()), k -> new Bucket()).add(entry);
+            byTemplate.computeIfAbsent(key(entry.getMethod(), entry.getTemplate()), k -> new Bucket()).add(entry);
+        }
+    }
+
+    @Override
+    public ReplayEntry match(final ReplayRequest request) {
+        final String method = request.getMethod().toUpperCase(Locale.ROOT);
+        final Bucket exact = byPath.get(key(method, request.getPath()));
+        if (exact != null) {
+            final ReplayEntry entry = exact.find(request, strictness);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        final Bucket template = byTemplate.get(key(method, PathTemplates.toTemplate(request.getPath())));
+        return template == null ? null : template.find(request, strictness);
+    }
+
+    private static String key(final String method, final String path) {
+        return method + ' ' + path;
+    }
+
+    private static class Bucket {
+        private ReplayEntry first;
+        private final Map<String, ReplayEntry> byQuery = new HashMap<>();
+        private final Map<BodyKey, ReplayEntry> byBody = new HashMap<>();
+
+        private void add(final ReplayEntry entry) {
+            if (first == null) {
+                first = entry;
+            }
+            byQuery.putIfAbsent(entry.getQuery() == null ? "" : entry.getQuery(), entry);
+            byBody.putIfAbsent(new BodyKey(entry.getQuery(), entry.getRequestBody()), entry);
+        }
+
+        private ReplayEntry find(final ReplayRequest request, final MatchStrictness strictness) {
+            final ReplayEntry body = byBody.get(new BodyKey(request.getQuery(), request.getBody()));
+            if (body != null || strictness == MatchStrictness.BODY) {
+                return body;
+            }
+            final ReplayEntry query = byQuery.get(request.getQuery() == null ? "" : request.getQuery());
+            if (query != null || strictness == MatchStrictness.QUERY) {
+                return query;
+            }
+            return first;
+        }
+    }
+
+    private static class BodyKey {
+        private final String query;
+        private final String body;
+        private final int hash;
+
+        private BodyKey(final String query, final String body) {
+            this.query = query;
+            this.body = body;
+            this.hash = Objects.hash(query, body);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!BodyKey.class.isInstance(o)) {
+                return false;
+            }
+            final BodyKey other = BodyKey.class.cast(o);
+            return hash == other.hash && Objects.equals(query, other.query) && Objects.equals(body, other.body);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
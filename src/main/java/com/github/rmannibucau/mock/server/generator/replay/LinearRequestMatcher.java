@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import com.github.rmannibucau.mock.server.generator.PathTemplates;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Scans all the entries for each request, it is only suited to small HAR files
+ * and is mainly the reference implementation of the {@link RequestMatcher} contract.
+ */
+@RequiredArgsConstructor
+public class LinearRequestMatcher implements RequestMatcher {
+    private final List<ReplayEntry> entries;
+    private final MatchStrictness strictness;
+
+    @Override
+    public ReplayEntry match(final ReplayRequest request) {
+        final String method = request.getMethod().toUpperCase(Locale.ROOT);
+        final ReplayEntry exact = match(method, request.getPath(), false, request);
+        return exact != null ? exact : match(method, PathTemplates.toTemplate(request.getPath()), true, request);
+    }
+
+    private ReplayEntry match(final String method, final String path, final boolean template, final ReplayRequest request) {
+        final MatchStrictness[] levels = MatchStrictness.values();
+        for (int level = levels.length - 1; level >= strictness.ordinal(); level--) {
+            for (final ReplayEntry entry : entries) {
+                if (entry.getMethod().equals(method) && (template ? entry.getTemplate() : entry.getPath()).equals(path)
+                        && matches(levels[level], entry, request)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(final MatchStrictness level, final ReplayEntry entry, final ReplayRequest request) {
+        switch (level) {
+            case BODY:
+                return Objects.equals(entry.getQuery(), request.getQuery()) && Objects.equals(entry.getRequestBody(), request.getBody());
+            case QUERY:
+                return Objects.equals(entry.getQuery(), request.getQuery());
+            default:
+                return true;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+/**
+ * What a request must share with a recorded entry to match it, the method and the path (or path template)
+ * are always required. Whatever the strictness, the most specific match wins.
+ */
+public enum MatchStrictness {
+    /**
+     * Method and path.
+     */
+    PATH,
+
+    /**
+     * Method, path and query parameters (order insensitive).
+     */
+    QUERY,
+
+    /**
+     * Method, path, query parameters and body.
+     */
+    BODY
+}
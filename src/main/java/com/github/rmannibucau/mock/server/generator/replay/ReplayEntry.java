@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+import static java.util.Arrays.asList;
+
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import com.github.rmannibucau.mock.server.generator.PathTemplates;
+import com.github.rmannibucau.mock.server.generator.model.Har;
+
+import lombok.Getter;
+
+/**
+ * A recorded entry prepared for replay: matching keys and response headers are computed once,
+ * the body bytes are decoded on demand and cached by {@link ResponseCache}.
+ */
+@Getter
+public class ReplayEntry {
+    private static final Collection<String> SKIPPED_HEADERS = asList(
+            "content-length", "transfer-encoding", "date", "connection",
+            "content-encoding", "etag"); // HAR bodies are decoded and the replay computes its own tags
+
+    private final int index;
+    private final Har.Entry entry;
+    private final String method;
+    private final String path;
+    private final String template;
+    private final String query;
+    private final String requestBody;
+    private final int status;
+    private final String[] headerNames;
+    private final String[] headerValues;
+    private final long waitTime;
+    private final long receiveTime;
+
+    public ReplayEntry(final int index, final Har.Entry entry) {
+        this.index = index;
+        this.entry = entry;
+        this.method = entry.getRequest().getMethod().toUpperCase(Locale.ROOT);
+        this.path = pathOf(entry.getRequest().getUrl());
+        this.template = PathTemplates.toTemplate(path);
+        this.query = normalizeQuery(entry.getRequest().getQueryString());
+        this.requestBody = entry.getRequest().getPostData() == null || entry.getRequest().getPostData().getText() == null
+                || entry.getRequest().getPostData().getText().isEmpty() ? null : entry.getRequest().getPostData().getText();
+
+        final Har.Response response = entry.getResponse();
+        this.status = response.getStatus();
+
+        final List<String> names = new ArrayList<>();
+        final List<String> values = new ArrayList<>();
+        if (response.getHeaders() != null) {
+            for (final Har.Header header : response.getHeaders()) {
+                if (!SKIPPED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                    names.add(header.getName());
+                    values.add(header.getValue());
+                }
+            }
+        }
+        this.headerNames = names.toArray(new String[0]);
+        this.headerValues = values.toArray(new String[0]);
+
+        final Har.Timings timings = entry.getTimings();
+        if (timings == null || timings.getWait() <= 0 && timings.getReceive() <= 0) {
+            this.waitTime = Math.max(0, entry.getTime());
+            this.receiveTime = 0;
+        } else {
+            this.waitTime = Math.max(0, timings.getWait());
+            this.receiveTime = Math.max(0, timings.getReceive());
+        }
+    }
+
+    /**
+     * @return the decoded response body, a new array for each call.
+     */
+    public byte[] getBody() {
+        return decode(entry.getResponse().getContent());
+    }
+
+    private static String normalizeQuery(final Collection<Har.Query> query) {
+        return query == null || query.isEmpty() ?
+                null : ReplayRequest.toQueryKey(query.stream().map(it -> new String[] { it.getName(), it.getValue() }));
+    }
+
+    static String pathOf(final String url) {
+        final int query = url.indexOf('?');
+        final String path = URI.create(query >= 0 ? url.substring(0, query) : url).getRawPath();
+        return path == null || path.isEmpty() ? "/" : path;
+    }
+
+    private static byte[] decode(final Har.Content content) {
+        if (content == null || content.getText() == null) {
+            return new byte[0];
+        }
+        if ("base64".equalsIgnoreCase(content.getEncoding())) {
+            return Base64.getDecoder().decode(content.getText());
+        }
+        return content.getText().getBytes(charsetOf(content.getMimeType()));
+    }
+
+    private static Charset charsetOf(final String mimeType) {
+        if (mimeType != null) {
+            final int charset = mimeType.toLowerCase(Locale.ROOT).indexOf("charset=");
+            if (charset >= 0) {
+                final int end = mimeType.indexOf(';', charset);
+                try {
+                    return Charset.forName(mimeType.substring(charset + "charset=".length(), end < 0 ? mimeType.length() : end)
+                            .trim().replace("\"", ""));
+                } catch (final IllegalArgumentException iae) {
+                    // default
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+}
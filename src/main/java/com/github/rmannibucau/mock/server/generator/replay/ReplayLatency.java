@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How {@link HarMockServer} delays the responses from the recorded timings: the headers are sent after the recorded
+ * {@code wait} (time to first byte) and the body after the recorded {@code receive}.
+ * When an entry has no timings its total {@code time} is used as the wait.
+ *
+ * Each recorded duration is multiplied by the scale then by a jitter factor drawn from the distribution,
+ * for instance a {@code 0.2} uniform jitter gives a factor between {@code 0.8} and {@code 1.2}.
+ */
+public class ReplayLatency {
+    public enum Jitter {
+        NONE, UNIFORM, GAUSSIAN
+    }
+
+    private double scale = 1;
+    private double jitter;
+    private Jitter distribution = Jitter.NONE;
+    private long maxDelay = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * @param scale multiplier of the recorded durations, {@code 0.5} replays twice faster than recorded.
+     * @return this configuration.
+     */
+    public ReplayLatency withScale(final double scale) {
+        if (scale < 0) {
+            throw new IllegalArgumentException("Negative scale: " + scale);
+        }
+        this.scale = scale;
+        return this;
+    }
+
+    /**
+     * @param amplitude    relative amplitude of the jitter (half width for uniform, standard deviation for gaussian).
+     * @param distribution the jitter distribution.
+     * @return this configuration.
+     */
+    public ReplayLatency withJitter(final double amplitude, final Jitter distribution) {
+        this.jitter = amplitude;
+        this.distribution = distribution;
+        return this;
+    }
+
+    /**
+     * @param maxDelay max delay of a phase, protects the server against outliers of the capture. Default to one minute.
+     * @param unit     the delay unit.
+     * @return this configuration.
+     */
+    public ReplayLatency withMaxDelay(final long maxDelay, final TimeUnit unit) {
+        this.maxDelay = unit.toNanos(maxDelay);
+        return this;
+    }
+
+    /**
+     * @param recordedMillis the recorded duration.
+     * @return the delay to apply in nanoseconds.
+     */
+    public long delay(final long recordedMillis) {
+        if (recordedMillis <= 0 || scale == 0) {
+            return 0;
+        }
+        final double factor;
+        switch (distribution) {
+            case UNIFORM:
+                factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+                break;
+            case GAUSSIAN:
+                factor = 1 + jitter * ThreadLocalRandom.current().nextGaussian();
+                break;
+            default:
+                factor = 1;
+        }
+        final double nanos = TimeUnit.MILLISECONDS.toNanos(recordedMillis) * scale * factor;
+        return nanos <= 0 ? 0 : Math.min(maxDelay, (long) nanos);
+    }
+}
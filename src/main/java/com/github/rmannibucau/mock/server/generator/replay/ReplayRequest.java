@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+import static java.util.stream.Collectors.joining;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.stream.Stream;
+
+import lombok.Getter;
+
+/**
+ * The incoming request as seen by a {@link RequestMatcher}.
+ */
+@Getter
+public class ReplayRequest {
+    private final String method;
+    private final String path;
+    private final String query;
+    private final String body;
+
+    /**
+     * @param method the HTTP method.
+     * @param path   the raw path.
+     * @param query  the raw (encoded) query string, can be null.
+     * @param body   the body, can be null.
+     */
+    public ReplayRequest(final String method, final String path, final String query, final String body) {
+        this.method = method;
+        this.path = path == null || path.isEmpty() ? "/" : path;
+        this.query = normalizeQuery(query);
+        this.body = body == null || body.isEmpty() ? null : body;
+    }
+
+    // decoded then re-encoded so the raw query and the decoded HAR parameters give the same key
+    static String normalizeQuery(final String query) {
+        return query == null || query.isEmpty() ? null : toQueryKey(Stream.of(query.split("&"))
+                .filter(it -> !it.isEmpty())
+                .map(it -> {
+                    final int sep = it.indexOf('=');
+                    return sep < 0 ?
+                            new String[] { decode(it), "" } : new String[] { decode(it.substring(0, sep)), decode(it.substring(sep + 1)) };
+                }));
+    }
+
+    /**
+     * @param parameters the decoded name/value pairs.
+     * @return the order insensitive key of these parameters, null if there is none.
+     */
+    static String toQueryKey(final Stream<String[]> parameters) {
+        final String key = parameters
+                .map(it -> encode(it[0] == null ? "" : it[0]) + '=' + encode(it[1] == null ? "" : it[1]))
+                .sorted()
+                .collect(joining("&"));
+        return key.isEmpty() ? null : key;
+    }
+
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (final IllegalArgumentException iae) { // malformed escape, keep it as sent
+            return value;
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(final String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
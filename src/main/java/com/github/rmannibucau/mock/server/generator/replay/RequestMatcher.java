@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+/**
+ * Finds the recorded entry to replay for a request.
+ *
+ * Candidates are evaluated in a deterministic order: entries with the exact path before the ones
+ * matching the path template (numeric or UUID segments), then the most specific level first (body, query, path)
+ * down to the configured {@link MatchStrictness}, and finally the first recorded entry wins.
+ */
+public interface RequestMatcher {
+    /**
+     * @param request the incoming request.
+     * @return the matching entry or null.
+     */
+    ReplayEntry match(ReplayRequest request);
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU of the {@link CachedResponse} of the replayed entries, bounded by the encoded bytes it holds.
+ * A response is encoded on its first hit (or by {@link #preload(Collection)}) and evicted when the budget is exceeded,
+ * it is then encoded again from its entry on the next hit. A response bigger than the whole budget is never cached.
+ *
+ * Instances are thread safe, the encoding happens outside of the lock.
+ */
+public class ResponseCache {
+    private final long maxBytes;
+    private final int compressionThreshold;
+    private final Map<ReplayEntry, CachedResponse> responses = new LinkedHashMap<>(16, .75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long bytes;
+
+    /**
+     * @param maxBytes max size of the encoded responses kept in memory.
+     */
+    public ResponseCache(final long maxBytes) {
+        this(maxBytes, 256);
+    }
+
+    /**
+     * @param maxBytes             max size of the encoded responses kept in memory.
+     * @param compressionThreshold min body size to precompute a gzip variant.
+     */
+    public ResponseCache(final long maxBytes, final int compressionThreshold) {
+        this.maxBytes = maxBytes;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public CachedResponse get(final ReplayEntry entry) {
+        synchronized (this) {
+            final CachedResponse response = responses.get(entry);
+            if (response != null) {
+                hits.increment();
+                return response;
+            }
+        }
+        misses.increment();
+        final CachedResponse response = CachedResponse.of(entry, compressionThreshold);
+        if (response.getSize() > maxBytes) {
+            return response;
+        }
+        synchronized (this) {
+            final CachedResponse existing = responses.putIfAbsent(entry, response);
+            if (existing != null) { // encoded concurrently
+                return existing;
+            }
+            bytes += response.getSize();
+            final Iterator<CachedResponse> eldest = responses.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                final CachedResponse evicted = eldest.next();
+                if (evicted == response) {
+                    continue;
+                }
+                eldest.remove();
+                bytes -= evicted.getSize();
+                evictions.increment();
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Encodes the entries upfront, in order, until the budget is full.
+     *
+     * @param entries the entries to encode.
+     * @return the number of cached responses.
+     */
+    public int preload(final Collection<ReplayEntry> entries) {
+        int loaded = 0;
+        for (final ReplayEntry entry : entries) {
+            final CachedResponse response = CachedResponse.of(entry, compressionThreshold);
+            synchronized (this) {
+                if (bytes + response.getSize() > maxBytes) {
+                    break;
+                }
+                if (responses.putIfAbsent(entry, response) == null) {
+                    bytes += response.getSize();
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public synchronized int size() {
+        return responses.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+
+class AsyncCaptureTest {
+    @Test
+    void closeWhileProducing() throws Exception {
+        for (final AsyncCapture.BackPressure backPressure : AsyncCapture.BackPressure.values()) {
+            final int producers = 8;
+            final int perProducer = 500;
+            final LongAdder processed = new LongAdder();
+            final AsyncCapture capture = new AsyncCapture(1, 4, backPressure, 2, exchange -> processed.increment());
+            final CountDownLatch started = new CountDownLatch(producers);
+            final ExecutorService executor = Executors.newFixedThreadPool(producers);
+            try {
+                final List<Future<?>> tasks = new ArrayList<>();
+                for (int i = 0; i < producers; i++) {
+                    tasks.add(executor.submit(() -> {
+                        started.countDown();
+                        for (int j = 0; j < perProducer; j++) {
+                            capture.accept(new Exchange());
+                        }
+                    }));
+                }
+                started.await();
+                capture.close();
+                for (final Future<?> task : tasks) {
+                    task.get(1, TimeUnit.MINUTES); // BLOCK producers must not hang
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            // nothing is lost: each exchange is either processed or dropped
+            assertEquals(producers * perProducer, processed.sum() + capture.getDropped(), backPressure::name);
+            assertEquals(0, capture.getPending(), backPressure::name);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+class CapturePoliciesTest {
+    private static final URI USER_1 = URI.create("http://localhost/api/users/1");
+    private static final URI USER_2 = URI.create("http://localhost/api/users/2");
+    private static final URI ORDERS = URI.create("http://localhost/api/orders");
+
+    @Test
+    void sample() {
+        assertFalse(CapturePolicies.sample(0).accept("GET", USER_1));
+        assertTrue(CapturePolicies.sample(1).accept("GET", USER_1));
+
+        final CapturePolicy half = CapturePolicies.sample(.5);
+        int accepted = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (half.accept("GET", USER_1)) {
+                accepted++;
+            }
+        }
+        final int total = accepted;
+        assertTrue(total > 4_000 && total < 6_000, () -> "accepted: " + total);
+    }
+
+    @Test
+    void status() {
+        final CapturePolicy policy = CapturePolicies.status(it -> it < 400);
+        assertTrue(policy.accept("GET", USER_1));
+        assertTrue(policy.accept("GET", USER_1, 200));
+        assertFalse(policy.accept("GET", USER_1, 404));
+    }
+
+    @Test
+    void maxEntriesPerEndpoint() {
+        final CapturePolicy policy = CapturePolicies.maxEntriesPerEndpoint(2);
+        for (final URI uri : new URI[]{ USER_1, USER_2 }) { // same template
+            assertTrue(policy.accept("GET", uri));
+            assertTrue(policy.accept("GET", uri, 200));
+        }
+        assertFalse(policy.accept("GET", USER_1));
+        assertTrue(policy.accept("DELETE", USER_1));
+        assertTrue(policy.accept("GET", ORDERS));
+    }
+
+    @Test
+    void bytesPerSecond() {
+        final CapturePolicy policy = CapturePolicies.bytesPerSecond(500);
+        int accepted = 0;
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (System.nanoTime() < end) {
+            if (policy.accept("GET", USER_1)) {
+                accepted++;
+                policy.onCaptured("GET", USER_1, 10);
+            }
+            LockSupport.parkNanos(900_000);
+        }
+        // 500 bytes of initial capacity then 500 bytes refilled in the second, 10 bytes per capture
+        final int total = accepted;
+        assertTrue(total >= 70 && total <= 110, () -> "accepted: " + total);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import org.junit.jupiter.api.Test;
+
+class EntryStoreTest {
+    @Test
+    void concurrentAppends() throws Exception {
+        final int threads = 8;
+        final int perThread = 3000; // several chunks per stripe
+        final ZonedDateTime base = ZonedDateTime.now();
+        final EntryStore store = new EntryStore(2); // stripes are shared between threads
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> appends = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                appends.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        final Har.Entry entry = new Har.Entry();
+                        entry.setStartedDateTime(base.plusSeconds(i % 10));
+                        entry.setComment(thread + ":" + i);
+                        store.add(entry);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (final Future<?> append : appends) {
+                append.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * perThread, store.size());
+        ZonedDateTime previous = null;
+        final Map<String, Integer> lastIndexPerThreadAndDate = new HashMap<>();
+        int count = 0;
+        for (final Har.Entry entry : store) {
+            count++;
+            assertTrue(previous == null || !entry.getStartedDateTime().isBefore(previous));
+            previous = entry.getStartedDateTime();
+
+            final String[] segments = entry.getComment().split(":");
+            final int index = Integer.parseInt(segments[1]);
+            final Integer last = lastIndexPerThreadAndDate.put(segments[0] + '@' + (index % 10), index);
+            assertTrue(last == null || last < index, () -> "appends of a thread are not in order: " + entry.getComment());
+        }
+        assertEquals(threads * perThread, count);
+    }
+
+    @Test
+    void clear() {
+        final EntryStore store = new EntryStore(2);
+        store.add(new Har.Entry());
+        store.add(new Har.Entry());
+        assertEquals(2, store.size());
+        store.clear();
+        assertTrue(store.isEmpty());
+        store.add(new Har.Entry());
+        assertEquals(1, store.size());
+        assertEquals(1, store.stream().count());
+    }
+}
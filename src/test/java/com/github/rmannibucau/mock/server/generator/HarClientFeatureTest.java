@@ -15,22 +15,43 @@
  */
 package com.github.rmannibucau.mock.server.generator;
 
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static javax.ws.rs.client.Entity.entity;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import com.github.rmannibucau.mock.server.generator.endpoint.SimpleEndpoints;
+import com.github.rmannibucau.mock.server.generator.model.Har;
 import org.apache.meecrowave.Meecrowave;
 import org.apache.meecrowave.junit5.MeecrowaveConfig;
 import org.junit.jupiter.api.Test;
@@ -43,21 +64,242 @@ class HarClientFeatureTest {
     @Test
     void capture() {
         final HarClientFeature feature = new HarClientFeature();
+        doCalls(feature);
+        assertCapture(feature.getHar());
+    }
+
+    @Test
+    @SuppressWarnings("try") // Jsonb.close() declares Exception
+    void captureStreaming() throws Exception {
+        final StringWriter output = new StringWriter();
+        try (final HarStreamWriter writer = new HarStreamWriter(output)) {
+            doCalls(new HarClientFeature(writer));
+        }
+        try (final Jsonb jsonb = JsonbBuilder.create()) {
+            assertCapture(jsonb.fromJson(output.toString(), Har.class));
+        }
+    }
+
+    @Test
+    void captureBinary() throws IOException {
+        final Path binary = Paths.get("target/HarClientFeatureTest/captureBinary.harb");
+        try (final BinaryCaptureWriter writer = BinaryCaptureWriter.open(binary)) {
+            doCalls(new HarClientFeature().withExchangeSink(writer));
+        }
+        final Path har = Paths.get("target/HarClientFeatureTest/captureBinary.har");
+        assertEquals(3, new BinaryCaptureReader().convert(binary, har));
+        assertCapture(new HarReader().read(har));
+
+        // a crash while writing the last record must not make the capture unreadable
+        final Path truncated = Paths.get("target/HarClientFeatureTest/captureBinary-truncated.harb");
+        final byte[] bytes = Files.readAllBytes(binary);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 10));
+        try (final Stream<Exchange> exchanges = new BinaryCaptureReader().exchanges(truncated)) {
+            assertEquals(2, exchanges.count());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try") // close() is called explicitly to wait for the pending conversions
+    void captureAsync() {
+        try (final HarClientFeature feature = new HarClientFeature()
+                .withAsyncCapture(1, 16, AsyncCapture.BackPressure.BLOCK, 1)) {
+            doCalls(feature);
+            feature.close();
+            assertCapture(feature.getHar());
+        }
+    }
+
+    @Test
+    void truncateBodies() {
+        final HarClientFeature feature = new HarClientFeature().withMaxCaptureSize(5);
+        doCalls(feature);
+        final Har.Content content = feature.getHar().getLog().getEntries().iterator().next().getResponse().getContent();
+        assertEquals("{\"tex", content.getText());
+        assertEquals(17, content.getSize());
+        assertEquals("truncated: 5 bytes captured out of 17", content.getComment());
+    }
+
+    @Test
+    void spillToDisk() {
+        final HarClientFeature feature = new HarClientFeature().withSpillThreshold(4); // below a chunk
+        doCalls(feature);
+        assertCapture(feature.getHar());
+
+        final char[] chars = new char[10_000]; // several chunks
+        Arrays.fill(chars, 'a');
+        final String text = new String(chars);
+        final Collection<String> bodies = new ArrayList<>();
+        final HarClientFeature big = new HarClientFeature().withSpillThreshold(1024).withExchangeSink(exchange -> {
+            assertTrue(exchange.getRequestBody().isMapped());
+            assertTrue(exchange.getResponseBody().isMapped());
+            bodies.add(exchange.getRequestBody().toString(StandardCharsets.UTF_8));
+            bodies.add(exchange.getResponseBody().toString(StandardCharsets.UTF_8));
+        });
+        final Client client = ClientBuilder.newClient().register(big);
+        try {
+            final SimpleEndpoints.Text response = client.target("http://localhost:" + config.getHttpPort()).path("test")
+                    .request(MediaType.APPLICATION_JSON_TYPE)
+                    .post(entity(new SimpleEndpoints.Text(text), MediaType.APPLICATION_JSON_TYPE), SimpleEndpoints.Text.class);
+            assertEquals("got: " + text, response.getText());
+        } finally {
+            client.close();
+        }
+        assertEquals(asList("{\"text\":\"" + text + "\"}", "{\"text\":\"got: " + text + "\"}"), bodies);
+    }
+
+    @Test
+    void streamRequestBody() {
+        final HarClientFeature feature = new HarClientFeature();
+        final Client client = ClientBuilder.newClient().register(feature);
+        try {
+            client.target("http://localhost:" + config.getHttpPort()).path("test")
+                  .request(MediaType.APPLICATION_JSON_TYPE)
+                  .post(entity(new ByteArrayInputStream("{\"text\":\"stream\"}".getBytes(StandardCharsets.UTF_8)),
+                          MediaType.APPLICATION_JSON_TYPE), String.class);
+        } finally {
+            client.close();
+        }
+        final Har.PostData postData = feature.getHar().getLog().getEntries().iterator().next().getRequest().getPostData();
+        assertEquals("{\"text\":\"stream\"}", postData.getText());
+    }
+
+    @Test
+    void bodyStore() throws IOException {
+        final Path directory = Paths.get("target/HarClientFeatureTest/bodyStore");
+        if (Files.exists(directory)) {
+            try (final Stream<Path> files = Files.list(directory)) {
+                files.forEach(it -> it.toFile().delete());
+            }
+        }
+        final BodyStore store = new BodyStore(directory).withThreshold(17);
+        final HarClientFeature feature = new HarClientFeature().withBodyStore(store);
+        doCalls(feature);
+        doCalls(feature);
+
+        final Har.Content content = feature.getHar().getLog().getEntries().iterator().next().getResponse().getContent();
+        assertNull(content.getText());
+        assertEquals("base64", content.getEncoding());
+        assertTrue(Files.exists(store.resolve(content.getFile())));
+        assertEquals(3, store.getStoredBodies()); // responses are stored once even if captured twice
+
+        final String referenced = new HarWriter(false).toString(feature.getHar());
+        assertTrue(referenced.contains("\"_file\":\"" + content.getFile() + '"'), referenced);
+
+        final String inlined = new HarWriter(false).withInlinedBodies(store).toString(feature.getHar());
+        assertFalse(inlined.contains("_file"), inlined);
+        final Har.Content read = new HarReader().entries(new ByteArrayInputStream(inlined.getBytes(StandardCharsets.UTF_8)))
+                .findFirst().orElseThrow(IllegalStateException::new).getResponse().getContent();
+        assertEquals("{\"text\":\"simple\"}", new String(Base64.getDecoder().decode(read.getText()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void latencyStatistics() {
+        final HarClientFeature feature = new HarClientFeature().withLatencyStatistics();
+        doCalls(feature);
+        final LatencyHistogram histogram = feature.getLatencyStatistics().get("GET", "/test/string");
+        assertEquals(1, histogram.getCount());
+        assertTrue(histogram.getValueAtPercentile(99) > 0);
+        assertEquals(3, feature.getLatencyStatistics().getHistograms().size());
+    }
+
+    @Test
+    void deduplication() {
+        final EntryDeduplicator deduplicator = new EntryDeduplicator(1000).withCollapse(true);
+        final HarClientFeature feature = new HarClientFeature().withDeduplication(deduplicator);
+        doCalls(feature);
+        doCalls(feature);
+        assertEquals(3, feature.getHar().getLog().getEntries().size());
+        assertEquals(3, deduplicator.getCollapsedEntries());
+        assertEquals(asList("hits: 2", "hits: 2", "hits: 2"),
+                feature.getHar().getLog().getEntries().stream().map(Har.Entry::getComment).collect(toList()));
+    }
+
+    @Test
+    void unreadResponseCompletesOnClose() {
+        final HarClientFeature feature = new HarClientFeature().withMaxCaptureSize(8);
+        final Client client = ClientBuilder.newClient().register(feature);
+        try {
+            final WebTarget test = client.target("http://localhost:" + config.getHttpPort()).path("test");
+            final Response closed = test.path("string").request(MediaType.APPLICATION_JSON_TYPE).get();
+            assertEquals(200, closed.getStatus());
+            assertTrue(feature.getHar().getLog().getEntries().isEmpty()); // entity neither read nor closed
+            closed.close();
+            assertEquals(1, feature.getHar().getLog().getEntries().size());
+
+            final Response unread = test.path("object").request(MediaType.APPLICATION_JSON_TYPE).get();
+            assertEquals(200, unread.getStatus());
+            feature.close(); // completes the pending exchanges
+            assertEquals(2, feature.getHar().getLog().getEntries().size());
+            unread.readEntity(String.class); // the application can still read it
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    void collapseRequiresInMemoryCapture() {
+        final HarClientFeature feature = new HarClientFeature(entry -> {
+        }).withDeduplication(new EntryDeduplicator(1000).withCollapse(true));
+        assertThrows(IllegalStateException.class, feature::createCaptureConsumer);
+    }
+
+    @Test
+    void metrics() throws Exception {
+        final ObjectName name = new ObjectName("com.github.rmannibucau.mock.server.generator:type=HarCapture,name=\"metrics\"");
+        try (final HarClientFeature feature = new HarClientFeature().withLatencyStatistics().withMetrics("metrics")) {
+            doCalls(feature);
+            final CaptureMetrics metrics = feature.getMetrics();
+            assertEquals(3, metrics.getCapturedExchanges());
+            assertEquals(3, metrics.getWrittenEntries());
+            assertEquals(3, metrics.getInMemoryEntries());
+            assertEquals(0, metrics.getDroppedExchanges());
+            assertEquals(69, metrics.getCapturedBytes()); // 3 responses + the posted payload
+            assertEquals(3, metrics.getEndpointLatencies().length);
+
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(3L, server.getAttribute(name, "CapturedExchanges"));
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    void capturePolicy() {
+        final HarClientFeature feature = new HarClientFeature()
+                .withCapturePolicy(CapturePolicies.exclude("*/test/string").and(CapturePolicies.status(it -> it < 400)));
+        doCalls(feature);
+        final Client client = ClientBuilder.newClient().register(feature);
+        try {
+            assertEquals(404, client.target("http://localhost:" + config.getHttpPort()).path("test/missing")
+                    .request(MediaType.APPLICATION_JSON_TYPE).get().getStatus());
+        } finally {
+            client.close();
+        }
+        assertEquals(asList("http://localhost:" + config.getHttpPort() + "/test/object", "http://localhost:" + config.getHttpPort() + "/test"),
+                feature.getHar().getLog().getEntries().stream().map(it -> it.getRequest().getUrl()).collect(toList()));
+    }
+
+    private void doCalls(final HarClientFeature feature) {
         final Client client = ClientBuilder.newClient().register(feature);
         try {
             final WebTarget test = client.target("http://localhost:" + config.getHttpPort()).path("test");
             test.path("string").request(MediaType.APPLICATION_JSON_TYPE).get(String.class);
             test.path("object").request(MediaType.APPLICATION_JSON_TYPE).get(String.class);
             test.request(MediaType.APPLICATION_JSON_TYPE).post(entity(new SimpleEndpoints.Text("post"), MediaType.APPLICATION_JSON_TYPE), String.class);
-            final String har = new HarWriter().toString(feature.getHar());
-            assertEquals(expected("capture.json"),
-                    har.replaceAll(" {14}\"name\":\"Date\",\n {14}\"value\":\"[^\"]+\"",
-                            "              \"name\":\"Date\",\n              \"value\":\"@date@\""));
         } finally {
             client.close();
         }
     }
 
+    private void assertCapture(final Har capture) {
+        final String har = new HarWriter().toString(capture);
+        assertEquals(expected("capture.json"),
+                har.replaceAll(" {14}\"name\":\"Date\",\n {14}\"value\":\"[^\"]+\"",
+                        "              \"name\":\"Date\",\n              \"value\":\"@date@\"")
+                   .replaceAll("\"startedDateTime\":\"[^\"]+\"", "\"startedDateTime\":\"@date@\"")
+                   .replaceAll("\"(time|send|wait|receive)\":\\d+", "\"$1\":\"@$1@\""));
+    }
+
     private String expected(final String resource) {
         try {
             return new String(Files.readAllBytes(Paths.get("target/test-classes/expected/" + resource)), StandardCharsets.UTF_8)
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import org.junit.jupiter.api.Test;
+
+class HarMergerTest {
+    @Test
+    void mergeByDate() {
+        final Path output = Paths.get("target/HarMergerTest/mergeByDate.har");
+        final EntryDeduplicator deduplicator = new EntryDeduplicator(100).withCollapse(true);
+        final long count = new HarMerger()
+                .withParallelism(2)
+                .withBatchSize(2) // force several batches per file
+                .withDeduplication(deduplicator)
+                .merge(asList(
+                        shard("shard-1", entry(1, "/users/1"), entry(5, "/users/5"), entry(4, "/users/4")), // completion order
+                        shard("shard-2", entry(2, "/users/2"), entry(3, "/orders/3"), entry(6, "/orders/6")),
+                        shard("shard-3", entry(3, "/orders/3"), entry(7, "/users/7"))), // same pair, same start as in shard-2
+                        output);
+        assertEquals(1, deduplicator.getCollapsedEntries());
+        assertEquals(7, count); // 8 entries, the duplicate is dropped
+        assertEquals(
+                asList("/users/1", "/users/2", "/orders/3", "/users/4", "/users/5", "/orders/6", "/users/7"),
+                paths(output));
+    }
+
+    @Test
+    void mergeByEndpoint() {
+        final Path output = Paths.get("target/HarMergerTest/mergeByEndpoint.har");
+        final long count = new HarMerger()
+                .withOrder(HarMerger.Order.ENDPOINT)
+                .merge(asList(
+                        shard("endpoint-1", entry(1, "/users/1"), entry(3, "/orders/3")),
+                        shard("endpoint-2", entry(2, "/users/2"), entry(4, "/orders/4"))),
+                        output);
+        assertEquals(4, count);
+        assertEquals(asList("/orders/3", "/orders/4", "/users/1", "/users/2"), paths(output));
+    }
+
+    @Test
+    void mergeByEndpointReopensGroups() {
+        final Path output = Paths.get("target/HarMergerTest/mergeByEndpointReopensGroups.har");
+        final long count = new HarMerger()
+                .withOrder(HarMerger.Order.ENDPOINT)
+                .withMaxOpenGroups(1) // each endpoint switch closes the previous group file
+                .merge(asList(
+                        shard("reopen-1", entry(1, "/users/1"), entry(3, "/orders/3"), entry(5, "/users/5")),
+                        shard("reopen-2", entry(2, "/items/2"), entry(4, "/orders/4"), entry(6, "/items/6"))),
+                        output);
+        assertEquals(6, count);
+        assertEquals(asList("/items/2", "/items/6", "/orders/3", "/orders/4", "/users/1", "/users/5"), paths(output));
+    }
+
+    private List<String> paths(final Path har) {
+        try (final Stream<Har.Entry> entries = new HarReader().entries(har)) {
+            return entries.map(it -> it.getRequest().getUrl().substring("http://localhost".length())).collect(toList());
+        }
+    }
+
+    private Path shard(final String name, final Har.Entry... entries) {
+        final Har har = new Har();
+        har.getLog().setEntries(asList(entries));
+        final Path path = Paths.get("target/HarMergerTest/" + name + ".har");
+        new HarWriter().write(path, har);
+        return path;
+    }
+
+    private Har.Entry entry(final int second, final String path) {
+        final Har.Request request = new Har.Request();
+        request.setMethod("GET");
+        request.setUrl("http://localhost" + path);
+        final Har.Entry entry = new Har.Entry();
+        entry.setStartedDateTime(ZonedDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.of("UTC")));
+        entry.setRequest(request);
+        entry.setResponse(new Har.Response());
+        return entry;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import org.junit.jupiter.api.Test;
+
+class HarReaderTest {
+    @Test
+    void stream() {
+        roundTrip(false);
+    }
+
+    @Test
+    void memoryMapped() {
+        roundTrip(true);
+    }
+
+    @Test
+    void noEntries() {
+        final Path output = Paths.get("target/HarReaderTest/noEntries.har");
+        HarStreamWriter.open(output).close();
+        assertEquals(0, new HarReader().read(output).getLog().getEntries().size());
+    }
+
+    private void roundTrip(final boolean memoryMapped) {
+        final Har.Log log = new Har.Log();
+        final Har.Page page = new Har.Page();
+        page.setId("page");
+        log.setPages(Collections.singletonList(page)); // written after entries, must be ignored
+
+        final List<Har.Entry> expected = IntStream.range(0, 50).mapToObj(this::entry).collect(toList());
+        final Path output = Paths.get("target/HarReaderTest/roundTrip_" + memoryMapped + ".har");
+        try (final HarStreamWriter writer = HarStreamWriter.open(output, log)) {
+            expected.forEach(writer);
+        }
+
+        try (final Stream<Har.Entry> stream = new HarReader().entries(output, memoryMapped)) {
+            assertEquals(expected, stream.collect(toList()));
+        }
+    }
+
+    private Har.Entry entry(final int index) {
+        final Har.Header header = new Har.Header();
+        header.setName("X-Index");
+        header.setValue(Integer.toString(index));
+
+        final Har.Request request = new Har.Request();
+        request.setMethod("GET");
+        request.setUrl("http://localhost/test/" + index);
+        request.setHeaders(Collections.singletonList(header));
+        request.setBodySize(-1);
+
+        final Har.Content content = new Har.Content();
+        content.setMimeType("application/json");
+        content.setText("{\"index\":" + index + "}");
+        content.setSize(content.getText().length());
+
+        final Har.Response response = new Har.Response();
+        response.setHeaders(Collections.singletonList(header));
+        response.setContent(content);
+
+        final Har.Timings timings = new Har.Timings();
+        timings.setWait(index);
+
+        final Har.Entry entry = new Har.Entry();
+        entry.setStartedDateTime(ZonedDateTime.of(2019, 6, 1, 10, 0, 0, index * 1_000_000, ZoneOffset.UTC));
+        entry.setTime(index);
+        entry.setRequest(request);
+        entry.setResponse(response);
+        entry.setTimings(timings);
+        return entry;
+    }
+}
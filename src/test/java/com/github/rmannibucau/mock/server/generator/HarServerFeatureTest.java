@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static javax.ws.rs.client.Entity.entity;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+
+import com.github.rmannibucau.mock.server.generator.endpoint.ServerCapture;
+import com.github.rmannibucau.mock.server.generator.endpoint.SimpleEndpoints;
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import org.apache.meecrowave.Meecrowave;
+import org.apache.meecrowave.junit5.MonoMeecrowaveConfig;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("mono-meecrowave") // own JVM, see the surefire configuration
+@MonoMeecrowaveConfig
+class HarServerFeatureTest {
+    @Inject
+    private Meecrowave.Builder config;
+
+    @Inject
+    private ServerCapture capture;
+
+    @Test
+    void capture() {
+        final Client client = ClientBuilder.newClient();
+        try {
+            final WebTarget test = client.target("http://localhost:" + config.getHttpPort()).path("test");
+            test.path("string").request(MediaType.APPLICATION_JSON_TYPE).get(String.class);
+            test.request(MediaType.APPLICATION_JSON_TYPE).post(entity(new SimpleEndpoints.Text("post"), MediaType.APPLICATION_JSON_TYPE), String.class);
+        } finally {
+            client.close();
+        }
+
+        final List<Har.Entry> entries = capture.getHar().getLog().getEntries().stream()
+                .filter(it -> it.getRequest().getUrl().endsWith("/test") || it.getRequest().getUrl().endsWith("/test/string"))
+                .collect(toList());
+        assertEquals(asList("GET", "POST"), entries.stream().map(it -> it.getRequest().getMethod()).collect(toList()));
+
+        final Har.Entry get = entries.get(0);
+        assertEquals(200, get.getResponse().getStatus());
+        assertEquals("{\"text\":\"simple\"}", get.getResponse().getContent().getText());
+        assertEquals(-1, get.getRequest().getBodySize());
+
+        final Har.Entry post = entries.get(1);
+        assertEquals("{\"text\":\"post\"}", post.getRequest().getPostData().getText());
+        assertEquals("{\"text\":\"got: post\"}", post.getResponse().getContent().getText());
+        assertTrue(post.getRequest().getHeaders().stream().anyMatch(it -> "Content-Type".equalsIgnoreCase(it.getName())));
+        assertTrue(post.getTimings().getSend() >= 0);
+    }
+
+    @Test
+    void headAndAsyncResponses() {
+        final Client client = ClientBuilder.newClient();
+        try {
+            final WebTarget base = client.target("http://localhost:" + config.getHttpPort());
+            assertEquals(200, base.path("test/string").request(MediaType.APPLICATION_JSON_TYPE).head().getStatus());
+            assertEquals("{\"text\":\"async\"}", base.path("async").request(MediaType.APPLICATION_JSON_TYPE).get(String.class));
+        } finally {
+            client.close();
+        }
+
+        final Har.Entry head = find("HEAD", "/test/string");
+        assertEquals(200, head.getResponse().getStatus());
+
+        final Har.Entry async = find("GET", "/async");
+        assertEquals("{\"text\":\"async\"}", async.getResponse().getContent().getText());
+    }
+
+    private Har.Entry find(final String method, final String path) {
+        return capture.getHar().getLog().getEntries().stream()
+                .filter(it -> method.equals(it.getRequest().getMethod()) && it.getRequest().getUrl().endsWith(path))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("no " + method + " " + path + " captured"));
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import org.junit.jupiter.api.Test;
+
+class RollingHarWriterTest {
+    @Test
+    void rollOnEntries() throws IOException {
+        final Path directory = clean(Paths.get("target/RollingHarWriterTest/rollOnEntries"));
+        try (final RollingHarWriter writer = new RollingHarWriter(directory, "capture")
+                .withMaxEntries(2)
+                .withCompression(true)
+                .withRetention(2)) {
+            for (int i = 0; i < 5; i++) {
+                writer.accept(entry(i));
+            }
+        }
+        assertEquals(2, files(directory).size());
+        assertEquals(2, urls(directory.resolve("capture-000002.har.gz")).size());
+        assertEquals(1, urls(directory.resolve("capture-000003.har.gz")).size());
+        assertEquals("http://localhost/4", urls(directory.resolve("capture-000003.har.gz")).get(0));
+    }
+
+    @Test
+    void rollOnBytes() throws IOException {
+        final Path directory = clean(Paths.get("target/RollingHarWriterTest/rollOnBytes"));
+        try (final RollingHarWriter writer = new RollingHarWriter(directory, "capture").withMaxBytes(1024)) {
+            for (int i = 0; i < 200; i++) {
+                writer.accept(entry(i));
+            }
+        }
+        final List<Path> segments = files(directory);
+        assertTrue(segments.size() > 1, segments::toString);
+        long entries = 0;
+        for (final Path segment : segments) {
+            assertTrue(Files.size(segment) < 1024 + 256, () -> segment + ": " + segment.toFile().length());
+            entries += urls(segment).size();
+        }
+        assertEquals(200, entries);
+    }
+
+    @Test
+    void rollOnDuration() throws Exception {
+        final Path directory = clean(Paths.get("target/RollingHarWriterTest/rollOnDuration"));
+        try (final RollingHarWriter writer = new RollingHarWriter(directory, "capture")
+                .withMaxDuration(Duration.ofMillis(50))) {
+            writer.accept(entry(0));
+            final Path segment = directory.resolve("capture-000001.har");
+            for (int i = 0; i < 100 && !Files.exists(segment); i++) { // finished without any new entry
+                Thread.sleep(50);
+            }
+            assertTrue(Files.exists(segment));
+            assertEquals(1, urls(segment).size());
+        }
+    }
+
+    private List<String> urls(final Path segment) throws IOException {
+        try (final Stream<Har.Entry> entries = segment.getFileName().toString().endsWith(".gz") ?
+                new HarReader().entries(new GZIPInputStream(Files.newInputStream(segment))) :
+                new HarReader().entries(segment)) {
+            return entries.map(it -> it.getRequest().getUrl()).collect(toList());
+        }
+    }
+
+    private List<Path> files(final Path directory) throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.collect(toList());
+        }
+    }
+
+    private Path clean(final Path directory) throws IOException {
+        if (Files.exists(directory)) {
+            try (final Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(it -> it.toFile().delete());
+            }
+        }
+        return directory;
+    }
+
+    private Har.Entry entry(final int index) {
+        final Har.Request request = new Har.Request();
+        request.setMethod("GET");
+        request.setUrl("http://localhost/" + index);
+        final Har.Entry entry = new Har.Entry();
+        entry.setRequest(request);
+        entry.setResponse(new Har.Response());
+        return entry;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.contract;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import javax.json.JsonObject;
+
+import com.github.rmannibucau.mock.server.generator.model.Contract;
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import org.junit.jupiter.api.Test;
+
+class ContractExtractorTest {
+    @Test
+    void extract() throws Exception {
+        final List<Har.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(entry("GET", "http://localhost:1234/api/users/" + i + (i % 3 == 0 ? "?expand=true&lang=en" : "?lang=fr"),
+                    null, 200, "{\"id\":" + i + ",\"name\":\"user" + i + "\"" + (i % 2 == 0 ? ",\"email\":\"u@test\"" : "")
+                            + ",\"created\":\"2019-03-0" + (i % 9 + 1) + "T10:00:00.000Z\",\"score\":" + (i % 5 == 0 ? "1.5" : "2")
+                            + ",\"tags\":[\"a\",\"b\"],\"manager\":" + (i % 4 == 0 ? "null" : "{\"id\":\"" + UUID.randomUUID() + "\"}")
+                            + "}"));
+        }
+        entries.add(entry("POST", "http://localhost:1234/api/users", "{\"name\":\"new\"}", 201, "{\"id\":101}"));
+        entries.add(entry("POST", "http://localhost:1234/api/users", "{\"name\":\"new\",\"admin\":true}", 201, "{\"id\":102}"));
+        entries.add(entry("GET", "http://localhost:1234/api/users/404?lang=en", null, 404, null));
+        entries.add(entry("GET", "http://localhost:1234/api/users/" + UUID.randomUUID() + "/orders", null, 200, "not json"));
+
+        final ContractExtractor extractor = new ContractExtractor().withParallelism(4).withBatchSize(16);
+        final Contract contract = extractor.extract(entries.stream());
+        assertEquals(asList("/api/users|POST", "/api/users/{id}|GET", "/api/users/{uuid}/orders|GET"),
+                contract.getRoutes().stream().map(it -> it.getPath() + '|' + it.getMethod()).collect(toList()));
+
+        final List<Contract.Route> routes = new ArrayList<>(contract.getRoutes());
+        final Contract.Route users = routes.get(1);
+        assertEquals(101, users.getCount());
+        assertSame(entries.get(0), users.getRepresentative());
+        assertEquals("expand:false,lang:true", users.getQueryParameters().stream()
+                .map(it -> it.getName() + ':' + it.isRequired()).collect(joining(",")));
+        assertNull(users.getRequest());
+        assertEquals(asList("200", "404"), new ArrayList<>(users.getResponses().keySet()));
+        assertNull(users.getResponses().get("404").getSchema());
+
+        final JsonObject schema = users.getResponses().get("200").getSchema();
+        assertEquals("object", schema.getString("type"));
+        assertEquals("[\"id\",\"name\",\"created\",\"score\",\"tags\",\"manager\"]", schema.getJsonArray("required").toString());
+        final JsonObject properties = schema.getJsonObject("properties");
+        assertEquals("integer", properties.getJsonObject("id").getString("type"));
+        assertEquals("number", properties.getJsonObject("score").getString("type"));
+        assertEquals("date-time", properties.getJsonObject("created").getString("format"));
+        assertTrue(!properties.getJsonObject("name").containsKey("format"));
+        assertEquals("{\"type\":\"array\",\"items\":{\"type\":\"string\"}}", properties.getJsonObject("tags").toString());
+        assertEquals("{\"type\":[\"null\",\"object\"],\"properties\":{\"id\":{\"type\":\"string\",\"format\":\"uuid\"}},"
+                + "\"required\":[\"id\"]}", properties.getJsonObject("manager").toString());
+
+        final Contract.Route orders = routes.get(2);
+        assertEquals(Collections.singletonList("application/json"), orders.getResponses().get("200").getContentTypes());
+        assertNull(orders.getResponses().get("200").getSchema()); // invalid
+
+        final Contract.Route create = routes.get(0);
+        assertEquals(2, create.getRequest().getCount());
+        assertEquals("{\"type\":\"object\",\"properties\":{\"name\":{\"type\":\"string\"},\"admin\":{\"type\":\"boolean\"}},"
+                + "\"required\":[\"name\"]}", create.getRequest().getSchema().toString());
+
+        // the parallelism does not change the result
+        final Path sequential = Paths.get("target/ContractExtractorTest/sequential.json");
+        final Path parallel = Paths.get("target/ContractExtractorTest/parallel.json");
+        extractor.write(new ContractExtractor().withParallelism(1).withBatchSize(1000).extract(entries.stream()), sequential);
+        extractor.write(contract, parallel);
+        final String json = new String(Files.readAllBytes(parallel), StandardCharsets.UTF_8);
+        assertEquals(new String(Files.readAllBytes(sequential), StandardCharsets.UTF_8), json);
+        assertTrue(json.contains("\"path\":\"/api/users/{id}\""), json);
+        assertTrue(!json.contains("representative"), json);
+        assertEquals(3, extractor.representatives(contract).getLog().getEntries().size());
+    }
+
+    @Test
+    void bounded() {
+        final Contract contract = new ContractExtractor().withMaxDepth(2).withMaxProperties(2).extract(Collections.singletonList(
+                entry("GET", "http://localhost/deep", null, 200, "{\"a\":1,\"b\":{\"c\":{\"d\":{}}},\"e\":[1]}")).stream());
+        assertEquals("{\"type\":\"object\",\"properties\":{\"a\":{\"type\":\"integer\"},\"b\":{\"type\":\"object\",\"properties\":"
+                        + "{\"c\":{\"type\":\"object\",\"x-truncated\":true}},\"required\":[\"c\"]}},\"required\":[\"a\",\"b\"],\"x-truncated\":true}",
+                contract.getRoutes().iterator().next().getResponses().get("200").getSchema().toString());
+    }
+
+    private Har.Entry entry(final String method, final String url, final String requestBody, final int status, final String body) {
+        final Har.Request request = new Har.Request();
+        request.setMethod(method);
+        final int query = url.indexOf('?');
+        request.setUrl(query < 0 ? url : url.substring(0, query + 1));
+        if (query > 0) {
+            final List<Har.Query> queryString = new ArrayList<>();
+            for (final String param : url.substring(query + 1).split("&")) {
+                final Har.Query q = new Har.Query();
+                q.setName(param.substring(0, param.indexOf('=')));
+                q.setValue(param.substring(param.indexOf('=') + 1));
+                queryString.add(q);
+            }
+            request.setQueryString(queryString);
+        }
+        if (requestBody != null) {
+            final Har.PostData postData = new Har.PostData();
+            postData.setMimeType("application/json");
+            postData.setText(requestBody);
+            request.setPostData(postData);
+        }
+
+        final Har.Content content = new Har.Content();
+        content.setMimeType(body == null ? null : "application/json");
+        content.setText(body);
+
+        final Har.Response response = new Har.Response();
+        response.setStatus(status);
+        response.setContent(content);
+
+        final Har.Entry entry = new Har.Entry();
+        entry.setRequest(request);
+        entry.setResponse(response);
+        return entry;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.diff;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.rmannibucau.mock.server.generator.HarWriter;
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import org.junit.jupiter.api.Test;
+
+class HarDiffTest {
+    @Test
+    void diff() {
+        final Path expected = write("expected.har", asList(
+                entry("GET", "http://localhost:1234/api/users/1", 200, "Mon, 01 Apr 2019 10:00:00 GMT",
+                        "{\"id\":1,\"name\":\"a\",\"score\":1.0,\"meta\":{\"timestamp\":1}}"),
+                entry("GET", "http://localhost:1234/api/counter?_=1", 200, null, "{\"value\":1}"),
+                entry("GET", "http://localhost:1234/api/counter?_=2", 200, null, "{\"value\":2}"),
+                entry("GET", "http://localhost:1234/api/users/2", 200, null, "{\"id\":2,\"name\":\"b\",\"tags\":[\"x\"]}"),
+                entry("DELETE", "http://localhost:1234/api/users/3", 204, null, null)));
+        final Path actual = write("actual.har", asList(
+                entry("GET", "http://localhost:5678/api/counter?_=3", 200, null, "{\"value\":1}"),
+                entry("GET", "http://localhost:5678/api/users/1", 200, "Tue, 02 Apr 2019 11:00:00 GMT",
+                        "{\"meta\":{\"timestamp\":2},\"score\":1,\"name\":\"a\",\"id\":1}"),
+                entry("GET", "http://localhost:5678/api/counter?_=4", 200, null, "{\"value\":2}"),
+                entry("GET", "http://localhost:5678/api/users/2", 500, null, "{\"id\":2,\"name\":\"c\",\"tags\":[\"x\",\"y\"]}"),
+                entry("POST", "http://localhost:5678/api/users", 201, null, "{\"id\":4}")));
+
+        final HarDiff diff = new HarDiff().withIgnoredQueryParameters("_").withIgnoredJsonPaths("/meta/timestamp");
+        final DiffReport report = diff.diff(expected, actual);
+        assertTrue(report.hasDifferences());
+        assertEquals(5, report.getExpectedEntries());
+        assertEquals(5, report.getActualEntries());
+        assertEquals(3, report.getUnchanged(), report::summary);
+        assertEquals(1, report.getChanged(), report::summary);
+        assertEquals(1, report.getAdded(), report::summary);
+        assertEquals(1, report.getRemoved(), report::summary);
+
+        final List<DiffReport.Difference> differences = report.getDifferences();
+        assertEquals(3, differences.size());
+        final DiffReport.Difference changed = differences.get(0);
+        assertEquals(DiffReport.Kind.CHANGED, changed.getKind());
+        assertEquals("http://localhost:5678/api/users/2", changed.getUrl());
+        assertEquals(3, changed.getExpectedIndex());
+        assertEquals(3, changed.getActualIndex());
+        assertEquals(asList("status: 200 -> 500", "body /name: \"b\" -> \"c\"", "body /tags: 1 items -> 2 items"), changed.getDetails());
+        assertEquals(DiffReport.Kind.ADDED, differences.get(1).getKind());
+        assertEquals("POST", differences.get(1).getMethod());
+        assertEquals(4, differences.get(1).getActualIndex());
+        assertEquals(DiffReport.Kind.REMOVED, differences.get(2).getKind());
+        assertEquals("DELETE", differences.get(2).getMethod());
+        assertEquals(4, differences.get(2).getExpectedIndex());
+
+        // without the ignore rules the timestamp and the counters differ
+        final DiffReport strict = new HarDiff().withMaxReported(1).diff(expected, actual);
+        assertEquals(0, strict.getUnchanged(), strict::summary);
+        assertEquals(2, strict.getChanged(), strict::summary);
+        assertEquals(3, strict.getAdded(), strict::summary);
+        assertEquals(3, strict.getRemoved(), strict::summary);
+        assertEquals(1, strict.getDifferences().size());
+        assertTrue(strict.summary().contains("... 7 more differences"), strict::summary);
+        assertEquals("body /meta/timestamp: 1 -> 2", strict.getDifferences().get(0).getDetails().get(0));
+
+        assertFalse(diff.diff(expected, expected).hasDifferences());
+    }
+
+    private Path write(final String name, final List<Har.Entry> entries) {
+        final Har har = new Har();
+        har.getLog().setEntries(entries);
+        final Path path = Paths.get("target/HarDiffTest").resolve(name);
+        new HarWriter().write(path, har);
+        return path;
+    }
+
+    private Har.Entry entry(final String method, final String url, final int status, final String date, final String body) {
+        final Har.Request request = new Har.Request();
+        request.setMethod(method);
+        final int query = url.indexOf('?');
+        request.setUrl(query < 0 ? url : url.substring(0, query + 1));
+        if (query > 0) {
+            final Har.Query q = new Har.Query();
+            q.setName(url.substring(query + 1, url.indexOf('=', query)));
+            q.setValue(url.substring(url.indexOf('=', query) + 1));
+            request.setQueryString(new ArrayList<>(asList(q)));
+        }
+
+        final List<Har.Header> headers = new ArrayList<>();
+        final Har.Header contentType = new Har.Header();
+        contentType.setName("Content-Type");
+        contentType.setValue("application/json");
+        headers.add(contentType);
+        if (date != null) {
+            final Har.Header dateHeader = new Har.Header();
+            dateHeader.setName("Date");
+            dateHeader.setValue(date);
+            headers.add(dateHeader);
+        }
+
+        final Har.Content content = new Har.Content();
+        content.setMimeType(body == null ? null : "application/json");
+        content.setText(body);
+
+        final Har.Response response = new Har.Response();
+        response.setStatus(status);
+        response.setHeaders(headers);
+        response.setContent(content);
+
+        final Har.Entry entry = new Har.Entry();
+        entry.setRequest(request);
+        entry.setResponse(response);
+        return entry;
+    }
+}
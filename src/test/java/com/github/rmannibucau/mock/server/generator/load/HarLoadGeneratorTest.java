@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.load;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import com.github.rmannibucau.mock.server.generator.replay.HarMockServer;
+import com.github.rmannibucau.mock.server.generator.replay.MatchStrictness;
+import com.github.rmannibucau.mock.server.generator.replay.ReplayLatency;
+import org.apache.meecrowave.junit5.MonoMeecrowaveConfig;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("mono-meecrowave") // own JVM, see the surefire configuration
+@MonoMeecrowaveConfig // the client must use the shared bus
+class HarLoadGeneratorTest {
+    @Test
+    void constantRate() {
+        final List<Har.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            entries.add(entry(i % 2 == 0 ? "GET" : "POST", "http://recorded:1234/api/users/" + i, null, 0));
+        }
+        final Har har = new Har();
+        har.getLog().setEntries(entries);
+
+        final Client client = ClientBuilder.newClient();
+        try (final HarMockServer server = new HarMockServer(har).start()) {
+            final LoadReport report = new HarLoadGenerator(client, server.getBaseUrl() + '/')
+                    .withRate(100)
+                    .run(entries.stream());
+            assertEquals(20, report.getSent());
+            assertEquals(20, report.getCompleted());
+            assertEquals(0, report.getFailed());
+            assertEquals(20, report.getStatusCount(2));
+            assertTrue(report.getDuration() >= TimeUnit.MILLISECONDS.toNanos(190), report::summary);
+            assertNotNull(report.getEndpoints().get("GET", "/api/users/{id}"), report::summary);
+            assertEquals(10, report.getEndpoints().get("POST", "/api/users/{id}").getCount());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    void recordedPacing() {
+        final ZonedDateTime start = ZonedDateTime.now();
+        final List<Har.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            entries.add(entry("GET", "http://recorded:1234/api/status?", start.plusNanos(TimeUnit.MILLISECONDS.toNanos(100 * i)), 0));
+        }
+        final Har har = new Har();
+        har.getLog().setEntries(entries);
+
+        final Client client = ClientBuilder.newClient();
+        try (final HarMockServer server = new HarMockServer(har).start()) {
+            final LoadReport report = new HarLoadGenerator(client, server.getBaseUrl())
+                    .withRecordedPacing(2)
+                    .run(entries.stream());
+            assertEquals(5, report.getStatusCount(2), report::summary);
+            assertTrue(report.getDuration() >= TimeUnit.MILLISECONDS.toNanos(200), report::summary);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    void coordinatedOmission() {
+        final List<Har.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            entries.add(entry("GET", "http://recorded:1234/api/slow", null, 100));
+        }
+        final Har har = new Har();
+        har.getLog().setEntries(entries);
+
+        final Client client = ClientBuilder.newClient();
+        try (final HarMockServer server = new HarMockServer(har, new InetSocketAddress("localhost", 0), 2, MatchStrictness.PATH)
+                .withLatency(new ReplayLatency())
+                .start()) {
+            final LoadReport report = new HarLoadGenerator(client, server.getBaseUrl())
+                    .withRate(50)
+                    .withMaxInFlight(1) // the backend can't keep the 50 req/s pace
+                    .run(entries.stream());
+            assertEquals(10, report.getCompleted(), report::summary);
+            // the last request was intended at 180ms but sent around 900ms
+            assertTrue(report.getResponseTimes().getMax() > 3 * report.getServiceTimes().getMax(), report::summary);
+            assertTrue(report.getMaxSendLag() > TimeUnit.MILLISECONDS.toNanos(500), report::summary);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    void encodedQuery() {
+        final Har.Entry search = entry("GET", "http://recorded:1234/api/search?", null, 0);
+        final Har.Query query = new Har.Query();
+        query.setName("q");
+        query.setValue("a b&c=d");
+        search.getRequest().setQueryString(Collections.singletonList(query));
+        final Har har = new Har();
+        har.getLog().setEntries(Collections.singletonList(search));
+
+        final Har.Entry invalid = entry("GET", null, null, 0);
+        final List<Har.Entry> entries = new ArrayList<>();
+        entries.add(invalid);
+        entries.add(search);
+        entries.add(invalid);
+
+        final Client client = ClientBuilder.newClient();
+        try (final HarMockServer server = new HarMockServer(har, new InetSocketAddress("localhost", 0), 2, MatchStrictness.QUERY).start()) {
+            final LoadReport report = new HarLoadGenerator(client, server.getBaseUrl())
+                    .withMaxInFlight(1) // a leaked permit would block the run
+                    .run(entries.stream());
+            assertEquals(1, report.getStatusCount(2), report::summary);
+            assertEquals(2, report.getFailed(), report::summary);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    void invalidMaxInFlight() {
+        assertThrows(IllegalArgumentException.class, () -> new HarLoadGenerator(null, "http://localhost").withMaxInFlight(0));
+    }
+
+    private Har.Entry entry(final String method, final String url, final ZonedDateTime date, final long wait) {
+        final Har.Request request = new Har.Request();
+        request.setMethod(method);
+        request.setUrl(url);
+        if ("POST".equals(method)) {
+            final Har.PostData postData = new Har.PostData();
+            postData.setMimeType("application/json");
+            postData.setText("{}");
+            request.setPostData(postData);
+        }
+
+        final Har.Header contentType = new Har.Header();
+        contentType.setName("Content-Type");
+        contentType.setValue("application/json");
+
+        final Har.Content content = new Har.Content();
+        content.setMimeType("application/json");
+        content.setText("{\"ok\":true}");
+
+        final Har.Response response = new Har.Response();
+        response.setStatus(200);
+        response.setHeaders(Collections.singletonList(contentType));
+        response.setContent(content);
+
+        final Har.Timings timings = new Har.Timings();
+        timings.setWait(wait);
+
+        final Har.Entry entry = new Har.Entry();
+        entry.setStartedDateTime(date);
+        entry.setRequest(request);
+        entry.setResponse(response);
+        entry.setTimings(timings);
+        return entry;
+    }
+}
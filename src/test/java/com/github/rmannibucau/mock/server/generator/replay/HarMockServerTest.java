@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import org.junit.jupiter.api.Test;
+
+class HarMockServerTest {
+    @Test
+    void replay() throws IOException {
+        final Har har = new Har();
+        har.getLog().setEntries(asList(
+                entry("GET", "http://localhost:1234/test/string", null, 200, "{\"text\":\"simple\"}"),
+                entry("GET", "http://localhost:1234/test/object?", "id", 200, "{\"text\":\"1\"}"),
+                entry("GET", "http://localhost:1234/test/object", null, 200, "{\"text\":\"default\"}"),
+                entry("POST", "http://localhost:1234/test", null, 201, "{\"text\":\"created\"}"),
+                entry("GET", "http://localhost:1234/test/users/1", null, 200, "{\"text\":\"user\"}")));
+        try (final HarMockServer server = new HarMockServer(har).start()) {
+            assertResponse(server.getBaseUrl() + "/test/string", "GET", 200, "{\"text\":\"simple\"}");
+            assertResponse(server.getBaseUrl() + "/test/object?id=1", "GET", 200, "{\"text\":\"1\"}");
+            assertResponse(server.getBaseUrl() + "/test/object", "GET", 200, "{\"text\":\"default\"}");
+            assertResponse(server.getBaseUrl() + "/test", "POST", 201, "{\"text\":\"created\"}");
+            assertResponse(server.getBaseUrl() + "/test/users/1", "GET", 200, "{\"text\":\"user\"}");
+            assertResponse(server.getBaseUrl() + "/test/users/42", "GET", 200, "{\"text\":\"user\"}");
+            assertResponse(server.getBaseUrl() + "/missing", "GET", 404, "");
+        }
+    }
+
+    @Test
+    void cachedResponses() throws IOException {
+        final StringBuilder big = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            big.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append('}');
+        }
+        final String bigBody = big.append(']').toString();
+        final Har har = new Har();
+        har.getLog().setEntries(asList(
+                entry("GET", "http://localhost:1234/test/big", null, 200, bigBody),
+                entry("GET", "http://localhost:1234/test/small", null, 200, "{}")));
+        try (final HarMockServer server = new HarMockServer(har).start()) {
+            assertEquals(2, server.getResponseCache().size());
+
+            final HttpURLConnection identity = open(server.getBaseUrl() + "/test/big", null, null);
+            assertEquals(200, identity.getResponseCode());
+            assertNull(identity.getHeaderField("Content-Encoding"));
+            assertEquals("Accept-Encoding", identity.getHeaderField("Vary"));
+            final String etag = identity.getHeaderField("ETag");
+            assertNotNull(etag);
+            assertEquals(bigBody, slurp(identity.getInputStream()));
+
+            final HttpURLConnection gzip = open(server.getBaseUrl() + "/test/big", "gzip, deflate", null);
+            assertEquals(200, gzip.getResponseCode());
+            assertEquals("gzip", gzip.getHeaderField("Content-Encoding"));
+            assertTrue(gzip.getContentLength() < bigBody.length());
+            assertNotEquals(etag, gzip.getHeaderField("ETag"));
+            assertEquals(bigBody, slurp(new GZIPInputStream(gzip.getInputStream())));
+
+            final HttpURLConnection refused = open(server.getBaseUrl() + "/test/big", "gzip;q=0", null);
+            assertNull(refused.getHeaderField("Content-Encoding"));
+            slurp(refused.getInputStream());
+
+            final HttpURLConnection notModified = open(server.getBaseUrl() + "/test/big", null, "\"other\", " + etag);
+            assertEquals(304, notModified.getResponseCode());
+            assertEquals(etag, notModified.getHeaderField("ETag"));
+
+            final HttpURLConnection small = open(server.getBaseUrl() + "/test/small", "gzip", "\"other\"");
+            assertEquals(200, small.getResponseCode());
+            assertNull(small.getHeaderField("Content-Encoding")); // not worth it
+            assertEquals("{}", slurp(small.getInputStream()));
+        }
+
+        try (final HarMockServer server = new HarMockServer(har).withResponseCacheSize(bigBody.length()).start()) {
+            assertEquals(0, server.getResponseCache().size()); // too big to preload with its gzip variant
+            assertResponse(server.getBaseUrl() + "/test/small", "GET", 200, "{}");
+            assertResponse(server.getBaseUrl() + "/test/big", "GET", 200, bigBody);
+            assertResponse(server.getBaseUrl() + "/test/small", "GET", 200, "{}");
+            assertTrue(server.getResponseCache().getBytes() <= bigBody.length());
+            assertEquals(1, server.getResponseCache().getHits());
+        }
+    }
+
+    @Test
+    void latency() throws Exception {
+        final Har.Entry delayed = entry("GET", "http://localhost:1234/test/slow", null, 200, "{\"slow\":true}");
+        final Har.Timings timings = new Har.Timings();
+        timings.setWait(1200);
+        timings.setReceive(400);
+        delayed.setTimings(timings);
+        final Har har = new Har();
+        har.getLog().setEntries(Collections.singletonList(delayed));
+
+        final int concurrency = 16;
+        final ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        try (final HarMockServer server = new HarMockServer(har, new InetSocketAddress("localhost", 0), 2, MatchStrictness.PATH)
+                .withLatency(new ReplayLatency().withScale(.5).withJitter(.1, ReplayLatency.Jitter.UNIFORM))
+                .start()) {
+            final long start = System.nanoTime();
+            final List<Future<?>> calls = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                calls.add(clients.submit(() -> {
+                    assertResponse(server.getBaseUrl() + "/test/slow", "GET", 200, "{\"slow\":true}");
+                    return null;
+                }));
+            }
+            for (final Future<?> call : calls) {
+                call.get(1, TimeUnit.MINUTES);
+            }
+            final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            // (600 + 200) ms -10%, with 2 request threads sequential delays would take 8 times more
+            assertTrue(duration >= 720, () -> "too fast: " + duration);
+            assertTrue(duration < 3000, () -> "delays are not concurrent: " + duration);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void requestBodyLimit() throws IOException {
+        final Har har = new Har();
+        har.getLog().setEntries(Collections.singletonList(
+                entry("POST", "http://localhost:1234/test", null, 201, "{\"text\":\"created\"}")));
+        try (final HarMockServer server = new HarMockServer(har).withMaxRequestBodySize(16).start()) {
+            assertEquals(201, post(server.getBaseUrl() + "/test", "{\"small\":true}", false));
+            assertEquals(201, post(server.getBaseUrl() + "/test", "{\"small\":true}", true));
+            assertEquals(413, post(server.getBaseUrl() + "/test", "{\"big\":\"0123456789abcdef\"}", false));
+            assertEquals(413, post(server.getBaseUrl() + "/test", "{\"big\":\"0123456789abcdef\"}", true));
+        }
+    }
+
+    @Test
+    void requestBufferSize() {
+        assertEquals(512, HarMockServer.initialBufferSize(null));
+        assertEquals(512, HarMockServer.initialBufferSize("invalid"));
+        assertEquals(512, HarMockServer.initialBufferSize("-1"));
+        assertEquals(12, HarMockServer.initialBufferSize("12"));
+        assertEquals(64 * 1024, HarMockServer.initialBufferSize("2147483647"));
+        assertEquals(64 * 1024, HarMockServer.initialBufferSize("99999999999999"));
+    }
+
+    private HttpURLConnection open(final String url, final String acceptEncoding, final String ifNoneMatch) throws IOException {
+        final HttpURLConnection connection = HttpURLConnection.class.cast(new URL(url).openConnection());
+        if (acceptEncoding != null) {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        return connection;
+    }
+
+    private int post(final String url, final String body, final boolean chunked) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        final HttpURLConnection connection = HttpURLConnection.class.cast(new URL(url).openConnection());
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        if (chunked) {
+            connection.setChunkedStreamingMode(4);
+        } else {
+            connection.setFixedLengthStreamingMode(bytes.length);
+        }
+        try {
+            try (final OutputStream stream = connection.getOutputStream()) {
+                stream.write(bytes);
+            }
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void assertResponse(final String url, final String method, final int status, final String body) throws IOException {
+        final HttpURLConnection connection = HttpURLConnection.class.cast(new URL(url).openConnection());
+        connection.setRequestMethod(method);
+        try {
+            assertEquals(status, connection.getResponseCode());
+            if (status < 400) {
+                assertEquals("application/json", connection.getHeaderField("Content-Type"));
+                assertEquals(body, slurp(connection.getInputStream()));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private String slurp(final InputStream stream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        try (final InputStream in = stream) {
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private Har.Entry entry(final String method, final String url, final String id, final int status, final String body) {
+        final Har.Request request = new Har.Request();
+        request.setMethod(method);
+        request.setUrl(url);
+        if (id != null) {
+            final Har.Query query = new Har.Query();
+            query.setName(id);
+            query.setValue("1");
+            request.setQueryString(Collections.singletonList(query));
+        }
+
+        final Har.Header contentType = new Har.Header();
+        contentType.setName("Content-Type");
+        contentType.setValue("application/json");
+
+        final Har.Content content = new Har.Content();
+        content.setMimeType("application/json");
+        content.setText(body);
+
+        final Har.Response response = new Har.Response();
+        response.setStatus(status);
+        response.setHeaders(Collections.singletonList(contentType));
+        response.setContent(content);
+
+        final Har.Entry entry = new Har.Entry();
+        entry.setRequest(request);
+        entry.setResponse(response);
+        return entry;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.mock.server.generator.replay;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.rmannibucau.mock.server.generator.model.Har;
+import org.junit.jupiter.api.Test;
+
+class RequestMatcherTest {
+    private final List<ReplayEntry> entries = HarMockServer.toReplayEntries(har(
+            entry("GET", "/search", null, null),
+            entry("GET", "/search", "q", "a b"),
+            entry("GET", "/search", "q", "c d"),
+            entry("POST", "/items", null, "{\"id\":1}"),
+            entry("POST", "/items", null, "{\"id\":2}"),
+            entry("GET", "/users/1", "q", "\u00e9t\u00e9")));
+
+    @Test
+    void queryStrictness() {
+        final RequestMatcher matcher = new IndexedRequestMatcher(entries, MatchStrictness.QUERY);
+        assertEquals(1, matcher.match(new ReplayRequest("GET", "/search", "q=a+b", null)).getIndex());
+        assertEquals(2, matcher.match(new ReplayRequest("GET", "/search", "q=c%20d", null)).getIndex());
+        assertEquals(0, matcher.match(new ReplayRequest("GET", "/search", null, null)).getIndex());
+        assertNull(matcher.match(new ReplayRequest("GET", "/search", "q=e", null)));
+        assertEquals(5, matcher.match(new ReplayRequest("GET", "/users/2", "q=%C3%A9t%C3%A9", null)).getIndex());
+    }
+
+    @Test
+    void bodyStrictness() {
+        final RequestMatcher matcher = new IndexedRequestMatcher(entries, MatchStrictness.BODY);
+        assertEquals(3, matcher.match(new ReplayRequest("POST", "/items", null, "{\"id\":1}")).getIndex());
+        assertEquals(4, matcher.match(new ReplayRequest("POST", "/items", null, "{\"id\":2}")).getIndex());
+        assertNull(matcher.match(new ReplayRequest("POST", "/items", null, "{\"id\":3}")));
+        assertNull(matcher.match(new ReplayRequest("POST", "/items", "q=1", "{\"id\":1}")));
+    }
+
+    @Test
+    void indexedMatchesLinear() {
+        final List<ReplayRequest> requests = asList(
+                new ReplayRequest("GET", "/search", "q=c%20d", null),
+                new ReplayRequest("GET", "/search", "q=c+d", null),
+                new ReplayRequest("GET", "/search", "q=a%20b&", null),
+                new ReplayRequest("GET", "/search", "q=e", null),
+                new ReplayRequest("GET", "/search", null, null),
+                new ReplayRequest("get", "/search", "q=%zz", null),
+                new ReplayRequest("POST", "/items", null, "{\"id\":2}"),
+                new ReplayRequest("POST", "/items", null, "{\"id\":3}"),
+                new ReplayRequest("GET", "/users/42", "q=%C3%A9t%C3%A9", null),
+                new ReplayRequest("GET", "/users/42", null, null),
+                new ReplayRequest("DELETE", "/search", null, null));
+        for (final MatchStrictness strictness : MatchStrictness.values()) {
+            final RequestMatcher indexed = new IndexedRequestMatcher(entries, strictness);
+            final RequestMatcher linear = new LinearRequestMatcher(entries, strictness);
+            for (final ReplayRequest request : requests) {
+                final ReplayEntry expected = linear.match(request);
+                final ReplayEntry actual = indexed.match(request);
+                assertEquals(expected == null ? null : expected.getIndex(), actual == null ? null : actual.getIndex(),
+                        () -> strictness + " " + request.getMethod() + " " + request.getPath() + "?" + request.getQuery());
+            }
+        }
+    }
+
+    private static Har har(final Har.Entry... entries) {
+        final Har har = new Har();
+        har.getLog().setEntries(new ArrayList<>(asList(entries)));
+        return har;
+    }
+
+    private static Har.Entry entry(final String method, final String path, final String name, final String value) {
+        final Har.Request request = new Har.Request();
+        request.setMethod(method);
+        request.setUrl("http://localhost:1234" + path);
+        if (name != null) {
+            final Har.Query query = new Har.Query();
+            query.setName(name);
+            query.setValue(value);
+            request.setQueryString(new ArrayList<>(asList(query)));
+        } else if (value != null) {
+            final Har.PostData postData = new Har.PostData();
+            postData.setMimeType("application/json");
+            postData.setText(value);
+            request.setPostData(postData);
+        }
+
+        final Har.Content content = new Har.Content();
+        content.setMimeType("application/json");
+        content.setText("{}");
+        final Har.Response response = new Har.Response();
+        response.setStatus(200);
+        response.setContent(content);
+
+        final Har.Entry entry = new Har.Entry();
+        entry.setRequest(request);
+        entry.setResponse(response);
+        return entry;
+    }
+}